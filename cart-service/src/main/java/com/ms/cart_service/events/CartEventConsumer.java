@@ -10,6 +10,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class CartEventConsumer {
 
@@ -24,26 +28,21 @@ public class CartEventConsumer {
         this.objectMapper = objectMapper;
     }
 
-    @KafkaListener(topics = {"created-product", "updated-product", "deleted-product"}, groupId = "cart-products")
-    public void receiveProductEvents(ConsumerRecord<String, String> record) {
-        try{
-            String json = record.value();
-            Product product = objectMapper.readValue(json, Product.class);
-            String topic = record.topic();
-            switch (topic){
-                case "created-product":
-                    productService.addProduct(product);
-                    break;
-                case "updated-product":
-                    productService.updateProduct(product);
-                    break;
-                case "deleted-product":
-                    productService.deleteProduct(product);
-                    break;
+    // only the latest record of each product in a batch is applied, a null value is a deleted product
+    @KafkaListener(topics = "product-state", groupId = "cart-products", containerFactory = "productStateKafkaListenerContainerFactory")
+    public void receiveProductState(List<ConsumerRecord<String, String>> records) {
+        Map<String, Product> states = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.key() == null) {
+                continue;
+            }
+            try {
+                states.put(record.key(), record.value() == null ? null : objectMapper.readValue(record.value(), Product.class));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
         }
+        productService.applyProductStates(states);
     }
 
     @KafkaListener(topics = "created-order", groupId = "request")
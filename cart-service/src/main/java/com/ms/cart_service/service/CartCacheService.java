@@ -21,7 +21,7 @@ public class CartCacheService {
         this.cartProductRepository = cartProductRepository;
     }
 
-    @Cacheable(value = "cart", key = "#email")
+    @Cacheable(value = "cart", key = "#email", sync = true)
     public CartDTO getCartByEmail(String email) {
         log.info("getCartByEmail called -- accessing database");
         List<CartProduct> fetchedCart = cartProductRepository.findByEmail(email);
@@ -5,8 +5,12 @@ import com.ms.cart_service.model.Product;
 import com.ms.cart_service.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -31,6 +35,23 @@ public class ProductService {
         productRepository.delete(product);
     }
 
+    @Transactional
+    public void applyProductStates(Map<String, Product> states) {
+        List<Product> saved = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        states.forEach((productId, product) -> {
+            if (product == null) {
+                deleted.add(productId);
+            } else {
+                saved.add(product);
+            }
+        });
+        productRepository.saveAll(saved);
+        if (!deleted.isEmpty()) {
+            productRepository.deleteAllByIdInBatch(deleted);
+        }
+    }
+
     public boolean existsProduct(String productId, int amount) {
         return productRepository.existsByProductIdAndAmountIsGreaterThanEqual(productId, amount);
     }
@@ -9,13 +9,16 @@ import com.ms.cart_service.repository.CartProductRepository;
 import com.ms.cart_service.repository.ProductRepository;
 import com.ms.cart_service.service.CartCacheService;
 import com.ms.cart_service.service.ProductService;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
 import com.redis.testcontainers.RedisContainer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -34,6 +37,8 @@ import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.util.List;
 import java.util.Properties;
@@ -66,9 +71,7 @@ class CartServiceApplicationTests {
 
 	static Properties props;
 
-	String createdProductTopic = "created-product";
-	String updatedProductTopic = "updated-product";
-	String deletedProductTopic = "deleted-product";
+	String productStateTopic = "product-state";
 	String userDeletedTopic = "user-deleted";
 	String createdOrderTopic = "created-order";
 
@@ -111,6 +114,9 @@ class CartServiceApplicationTests {
 
 	String baseUrl;
 
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
 	@BeforeAll
 	static void beforeAll() {
 		props = new Properties();
@@ -166,7 +172,7 @@ class CartServiceApplicationTests {
 		try {
 			Product product = new Product("2", "socks", BigDecimal.valueOf(15.99), 200);
 			String json = objectMapper.writeValueAsString(product);
-			kafkaTemplate.send(createdProductTopic, json);
+			kafkaTemplate.send(productStateTopic, product.getProductId(), json);
 
 			await().pollInterval(Duration.ofSeconds(2))
 					.atMost(Duration.ofSeconds(20))
@@ -191,7 +197,7 @@ class CartServiceApplicationTests {
 			if(updated != null) {
 				updated.setAmount(greaterAmount);
 				String json = objectMapper.writeValueAsString(updated);
-				kafkaTemplate.send(updatedProductTopic, json);
+				kafkaTemplate.send(productStateTopic, updated.getProductId(), json);
 
 				await().pollInterval(Duration.ofSeconds(2))
 						.atMost(Duration.ofSeconds(20))
@@ -208,25 +214,20 @@ class CartServiceApplicationTests {
 
 	@Test
 	void shouldVerifyDeleteProduct(){
-		try {
-			String productId = "1";
-			Product product = productRepository.findById(productId).orElse(null);
-			assertThat(product).isNotNull();
+		String productId = "1";
+		Product product = productRepository.findById(productId).orElse(null);
+		assertThat(product).isNotNull();
 
-			if(product != null) {
-				String json = objectMapper.writeValueAsString(product);
-				kafkaTemplate.send(deletedProductTopic, json);
+		if(product != null) {
+			kafkaTemplate.send(productStateTopic, product.getProductId(), null);
 
-				await().pollInterval(Duration.ofSeconds(1))
-						.atMost(Duration.ofSeconds(20))
-						.untilAsserted(() -> {
-							// check if the product was removed
-							boolean exists = productService.existsProduct(product.getProductId(), product.getAmount());
-							assertThat(exists).isFalse();
-						});
-			}
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
+			await().pollInterval(Duration.ofSeconds(1))
+					.atMost(Duration.ofSeconds(20))
+					.untilAsserted(() -> {
+						// check if the product was removed
+						boolean exists = productService.existsProduct(product.getProductId(), product.getAmount());
+						assertThat(exists).isFalse();
+					});
 		}
 	}
 
@@ -356,6 +357,15 @@ class CartServiceApplicationTests {
 		assertThat(cart).isEqualTo(response.getBody());
 	}
 
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl)).header("X-USER-EMAIL", "jhon").build();
+
+		new ConcurrentRequestBenchmark(10_000, 50_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
 	private HttpEntity<String> createHttpEntity(String headerValue, String requestBody) {
 		HttpHeaders headers = new HttpHeaders();
 		headers.add("X-USER-EMAIL", headerValue);
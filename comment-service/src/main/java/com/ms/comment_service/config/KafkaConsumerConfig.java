@@ -5,6 +5,7 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
@@ -18,6 +19,15 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     public String bootstrapServers;
 
+    @Value("${comment.kafka.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreads;
+
+    @Value("${comment.product-state.concurrency:3}")
+    private int productStateConcurrency;
+
+    @Value("${comment.product-state.max-batch-size:1000}")
+    private int productStateMaxBatchSize;
+
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
         System.out.println(bootstrapServers);
@@ -32,6 +42,31 @@ public class KafkaConsumerConfig {
     public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        configureListenerThreads(factory);
         return factory;
     }
+
+    // a new group starts at the beginning of the compacted log, which holds one record per live product
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> productStateKafkaListenerContainerFactory() {
+        Map<String, Object> configProps = new HashMap<>(consumerFactory().getConfigurationProperties());
+        configProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        configProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, productStateMaxBatchSize);
+
+        ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(configProps));
+        factory.setConcurrency(productStateConcurrency);
+        factory.setBatchListener(true);
+        configureListenerThreads(factory);
+        return factory;
+    }
+
+    // the factories are built here rather than by Boot's configurer, so the virtual-thread executor is set on them explicitly
+    private void configureListenerThreads(ConcurrentKafkaListenerContainerFactory<String, String> factory) {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("kafka-listener-");
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
 }
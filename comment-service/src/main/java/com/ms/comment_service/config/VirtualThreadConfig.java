@@ -0,0 +1,23 @@
+package com.ms.comment_service.config;
+
+import com.ms.commons.thread.PinnedThreadMonitor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class VirtualThreadConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    public PinnedThreadMonitor pinnedThreadMonitor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                   @Value("${comment.virtual-threads.pinned.threshold:20ms}") Duration threshold,
+                                                   @Value("${comment.virtual-threads.pinned.stack-depth:12}") int stackDepth) {
+        return new PinnedThreadMonitor(threshold, stackDepth, meterRegistry.getIfAvailable());
+    }
+}
@@ -1,7 +1,5 @@
 package com.ms.comment_service.events;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ms.comment_service.model.Product;
 import com.ms.comment_service.service.CommentService;
 import com.ms.comment_service.service.ProductService;
@@ -10,18 +8,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class CommentEventConsumer {
 
     private final CommentService commentService;
     private final ProductService productService;
-    private final ObjectMapper objectMapper;
 
     @Autowired
-    public CommentEventConsumer(CommentService commentService, ProductService productService, ObjectMapper objectMapper) {
+    public CommentEventConsumer(CommentService commentService, ProductService productService) {
         this.commentService = commentService;
         this.productService = productService;
-        this.objectMapper = objectMapper;
     }
 
     @KafkaListener(topics = "user-deleted", groupId = "comment-deleted")
@@ -29,24 +29,28 @@ public class CommentEventConsumer {
         commentService.deleteCommentByEmail(record.value());
     }
 
-    @KafkaListener(topics = {"created-product", "deleted-product"}, groupId = "comment-products")
-    public void receiveProductEvents(ConsumerRecord<String, String> record) {
-        try {
-            String json = record.value();
-            Product product = objectMapper.readValue(json, Product.class);
-
-            String topic = record.topic();
-            switch (topic) {
-                case "created-product":
-                    productService.addProduct(product);
-                    break;
-                case "deleted-product":
-                    productService.deleteProduct(product);
-                    commentService.deleteCommentByProductId(product.getProductId());
-                    break;
+    @KafkaListener(topics = "product-state", groupId = "comment-products", containerFactory = "productStateKafkaListenerContainerFactory")
+    public void receiveProductState(List<ConsumerRecord<String, String>> records) {
+        Set<String> live = new LinkedHashSet<>();
+        Set<String> deleted = new LinkedHashSet<>();
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.key() == null) {
+                continue;
+            }
+            // the latest record of a product in the batch wins, a null value is a deleted product
+            if (record.value() == null) {
+                live.remove(record.key());
+                deleted.add(record.key());
+            } else {
+                deleted.remove(record.key());
+                live.add(record.key());
             }
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        }
+
+        productService.addProducts(live);
+        for (String productId : deleted) {
+            productService.deleteProduct(new Product(productId));
+            commentService.deleteCommentByProductId(productId);
         }
     }
 }
@@ -22,25 +22,25 @@ public class CommentCacheService {
         this.commentRepository = commentRepository;
     }
 
-    @Cacheable(value = "comment-user", key = "#email")
+    @Cacheable(value = "comment-user", key = "#email", sync = true)
     public List<Comment> getCommentsByEmail(String email) {
         log.info("getCommentsByEmail called -- accessing database");
         return commentRepository.findByEmail(email);
     }
 
-    @Cacheable(value = "comment-product", key = "#productId")
+    @Cacheable(value = "comment-product", key = "#productId", sync = true)
     public List<Comment> getCommentsByProductId(String productId) {
         log.info("getCommentsByProductId called -- accessing database");
         return commentRepository.findByProductId(productId);
     }
 
-    @Cacheable(value = "comment-specific", key = "#email+#productId")
+    @Cacheable(value = "comment-specific", key = "#email+#productId", sync = true)
     public List<Comment> getCommentsByEmailAndProductId(String email, String productId) {
         log.info("getCommentsByEmailAndProductId called -- accessing database");
         return commentRepository.findByEmailAndProductId(email, productId);
     }
 
-    @Cacheable(value = "comment-id", key = "#commentId")
+    @Cacheable(value = "comment-id", key = "#commentId", sync = true)
     public Comment getCommentById(String commentId) {
         log.info("getCommentById called -- accessing database");
         Optional<Comment> comment = commentRepository.findById(commentId);
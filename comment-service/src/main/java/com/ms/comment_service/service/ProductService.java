@@ -6,6 +6,8 @@ import com.ms.comment_service.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+
 @Service
 public class ProductService {
 
@@ -22,6 +24,10 @@ public class ProductService {
         productRepository.save(product);
     }
 
+    public void addProducts(Collection<String> productIds) {
+        productRepository.saveAll(productIds.stream().map(Product::new).toList());
+    }
+
     public void deleteProduct(Product product) {
         productRepository.delete(product);
         commentRepository.deleteByProductId(product.getProductId());
@@ -8,12 +8,15 @@ import com.ms.comment_service.model.Product;
 import com.ms.comment_service.repository.CommentRepository;
 import com.ms.comment_service.repository.ProductRepository;
 import com.ms.comment_service.service.CommentCacheService;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
 import com.redis.testcontainers.RedisContainer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -30,6 +33,8 @@ import org.testcontainers.kafka.ConfluentKafkaContainer;
 import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.util.Date;
 import java.util.List;
@@ -90,8 +95,10 @@ class CommentServiceApplicationTests {
 
 	String baseUrl;
 
-	String createdProductTopic = "created-product";
-	String deletedProductTopic = "deleted-product";
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
+	String productStateTopic = "product-state";
 	String userDeletedTopic = "user-deleted";
 
 	@BeforeEach
@@ -352,7 +359,7 @@ class CommentServiceApplicationTests {
 	void shouldAddProduct(){
 		String newProductId = "hammer";
 		Product product = new Product(newProductId);
-		kafkaTemplate.send(createdProductTopic, parseObjectToJson(product));
+		kafkaTemplate.send(productStateTopic, newProductId, parseObjectToJson(product));
 
 		await().pollInterval(Duration.ofSeconds(2))
 				.atMost(Duration.ofSeconds(10))
@@ -368,9 +375,7 @@ class CommentServiceApplicationTests {
 	@Test
 	void shouldDeleteProduct(){
 		String deletedProductId = "phone";
-		Product product = new Product(deletedProductId);
-
-		kafkaTemplate.send(deletedProductTopic, parseObjectToJson(product));
+		kafkaTemplate.send(productStateTopic, deletedProductId, null);
 
 		await().pollInterval(Duration.ofSeconds(2))
 				.atMost(Duration.ofSeconds(10))
@@ -385,6 +390,15 @@ class CommentServiceApplicationTests {
 		assertThat(comments.isEmpty()).isTrue();
 	}
 
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/product/apple")).build();
+
+		new ConcurrentRequestBenchmark(10_000, 50_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
 	private <T> String parseObjectToJson(T object) {
 		try {
 			return objectMapper.writeValueAsString(object);
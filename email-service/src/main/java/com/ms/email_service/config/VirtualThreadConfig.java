@@ -0,0 +1,20 @@
+package com.ms.email_service.config;
+
+import com.ms.commons.thread.PinnedThreadMonitor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class VirtualThreadConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    public PinnedThreadMonitor pinnedThreadMonitor(@Value("${email.virtual-threads.pinned.threshold:20ms}") Duration threshold,
+                                                   @Value("${email.virtual-threads.pinned.stack-depth:12}") int stackDepth) {
+        return new PinnedThreadMonitor(threshold, stackDepth, null);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ms.order_service.config;
+
+import com.ms.commons.cache.CacheCodecProperties;
+import com.ms.commons.cache.CachePolicyProperties;
+import com.ms.commons.cache.CacheSizeMetrics;
+import com.ms.commons.cache.PolicyRedisCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "order.cache.codec")
+    public CacheCodecProperties cacheCodecProperties() {
+        return new CacheCodecProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "order.cache.policy")
+    public CachePolicyProperties cachePolicyProperties() {
+        return new CachePolicyProperties();
+    }
+
+    @Bean
+    public PolicyRedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, CacheCodecProperties codecProperties,
+                                                CachePolicyProperties policyProperties, MeterRegistry meterRegistry) {
+        // kept out of the context so that it does not replace the application task executor
+        ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        return new PolicyRedisCacheManager(redisConnectionFactory, RedisCacheConfiguration.defaultCacheConfig(), codecProperties, policyProperties, meterRegistry, refreshExecutor);
+    }
+
+    @Bean
+    public CacheSizeMetrics cacheSizeMetrics(PolicyRedisCacheManager cacheManager, RedisConnectionFactory redisConnectionFactory, MeterRegistry meterRegistry,
+                                             @Value("${order.cache.policy.size-interval-ms:60000}") long sizeInterval) {
+        return new CacheSizeMetrics(cacheManager, redisConnectionFactory, meterRegistry, Duration.ofMillis(sizeInterval));
+    }
+}
@@ -1,16 +1,25 @@
 package com.ms.order_service.controller;
 
 import com.ms.order_service.dto.OrderDTO;
+import com.ms.order_service.dto.OrderFilter;
+import com.ms.order_service.dto.OrderPage;
 import com.ms.order_service.events.OrderEventProducer;
-import com.ms.order_service.service.OrderCacheService;
+import com.ms.order_service.service.OrderListingService;
+import com.ms.order_service.service.OrderProjectionService;
 import com.ms.order_service.service.OrderService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
 import java.util.List;
 
 @RestController
@@ -18,13 +27,16 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
-    private final OrderCacheService orderCacheService;
+    private final OrderListingService orderListingService;
+    private final OrderProjectionService orderProjectionService;
     private final OrderEventProducer orderEventProducer;
 
     @Autowired
-    public OrderController(OrderService orderService, OrderCacheService orderCacheService, OrderEventProducer orderEventProducer) {
+    public OrderController(OrderService orderService, OrderListingService orderListingService,
+                           OrderProjectionService orderProjectionService, OrderEventProducer orderEventProducer) {
         this.orderService = orderService;
-        this.orderCacheService = orderCacheService;
+        this.orderListingService = orderListingService;
+        this.orderProjectionService = orderProjectionService;
         this.orderEventProducer = orderEventProducer;
     }
 
@@ -66,11 +78,31 @@ public class OrderController {
     }
 
     @GetMapping
-    @Operation(summary = "All Orders", description = "Returns all orders registered in the system.")
+    @Operation(summary = "All Orders", description = "Returns a page of the orders registered in the system ordered by date, filtered by status and date range, starting after the given cursor.")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<List<OrderDTO>> getOrders(HttpServletRequest request) {
+    public ResponseEntity<OrderPage> getOrders(@Parameter(schema = @Schema(allowableValues = {"FAILED", "SUCCESSFUL", "PROCESSING", "CANCELED"})) @RequestParam(required = false) String status,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(defaultValue = "20") int size,
+                                               HttpServletRequest request) {
         String role = request.getHeader("X-USER-ROLE");
-        return new ResponseEntity<>(orderCacheService.getOrders(role), HttpStatus.OK);
+        OrderFilter filter = orderListingService.filterOf(role, status, from, to, after, size);
+        return new ResponseEntity<>(orderListingService.getOrders(filter), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export Orders", description = "Streams the orders registered in the system as newline-delimited JSON, ordered by date and filtered by status and date range.")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<StreamingResponseBody> exportOrders(@Parameter(schema = @Schema(allowableValues = {"FAILED", "SUCCESSFUL", "PROCESSING", "CANCELED"})) @RequestParam(required = false) String status,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+                                                              HttpServletRequest request) {
+        String role = request.getHeader("X-USER-ROLE");
+        // checked before the response starts, the stream can no longer report an error status
+        OrderFilter filter = orderListingService.filterOf(role, status, from, to, null, 1);
+        StreamingResponseBody body = outputStream -> orderListingService.exportOrders(filter, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     @GetMapping("/me")
@@ -78,7 +110,7 @@ public class OrderController {
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<List<OrderDTO>> getUnarchivedOrdersByEmail(HttpServletRequest request) {
         String email = request.getHeader("X-USER-EMAIL");
-        return new ResponseEntity<>(orderCacheService.getUnarchivedOrdersByEmail(email), HttpStatus.OK);
+        return new ResponseEntity<>(orderProjectionService.getOrdersByEmail(email, false), HttpStatus.OK);
     }
 
     @GetMapping("/me/archived")
@@ -86,7 +118,7 @@ public class OrderController {
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<List<OrderDTO>> getArchivedOrdersByEmail(HttpServletRequest request) {
         String email = request.getHeader("X-USER-EMAIL");
-        return new ResponseEntity<>(orderCacheService.getArchivedOrdersByEmail(email), HttpStatus.OK);
+        return new ResponseEntity<>(orderProjectionService.getOrdersByEmail(email, true), HttpStatus.OK);
     }
 
     @GetMapping("me/{orderId}")
@@ -94,7 +126,7 @@ public class OrderController {
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<OrderDTO> getUnarchivedOrderByOrderIdAndEmail(@PathVariable String orderId, HttpServletRequest request) {
         String email = request.getHeader("X-USER-EMAIL");
-        return new ResponseEntity<>(orderCacheService.getUnarchivedOrderByOrderIdAndEmail(orderId, email), HttpStatus.OK);
+        return new ResponseEntity<>(orderProjectionService.getOrderByOrderIdAndEmail(orderId, email, false), HttpStatus.OK);
     }
 
     @GetMapping("me/{orderId}/archived")
@@ -102,7 +134,7 @@ public class OrderController {
     @ResponseStatus(HttpStatus.OK)
     public ResponseEntity<OrderDTO> getArchivedOrderByOrderIdAndEmail(@PathVariable String orderId, HttpServletRequest request) {
         String email = request.getHeader("X-USER-EMAIL");
-        return new ResponseEntity<>(orderCacheService.getArchivedOrderByOrderIdAndEmail(orderId, email), HttpStatus.OK);
+        return new ResponseEntity<>(orderProjectionService.getOrderByOrderIdAndEmail(orderId, email, true), HttpStatus.OK);
     }
 
     @DeleteMapping("/{orderId}")
@@ -113,4 +145,13 @@ public class OrderController {
         orderService.deleteOrderByOrderId(orderId, role);
         return new ResponseEntity<>("Order deleted !", HttpStatus.OK);
     }
+
+    @PostMapping("/projection/rebuild")
+    @Operation(summary = "Rebuild Order Projection", description = "Regenerates the per-user order read model that serves the user's order endpoints from the database.")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<String> rebuildProjection(HttpServletRequest request) {
+        String role = request.getHeader("X-USER-ROLE");
+        int users = orderProjectionService.rebuild(role);
+        return new ResponseEntity<>("Order projection rebuilt for " + users + " users !", HttpStatus.OK);
+    }
 }
@@ -0,0 +1,12 @@
+package com.ms.order_service.dto;
+
+import com.ms.order_service.model.OrderStatus;
+
+import java.sql.Timestamp;
+
+/**
+ * Filters of the admin order listing. The order date range is inclusive of from and exclusive of to, and
+ * afterDate and afterId are the keyset position of the last order of the previous page.
+ */
+public record OrderFilter(OrderStatus status, Timestamp from, Timestamp to, Timestamp afterDate, String afterId, int size) {
+}
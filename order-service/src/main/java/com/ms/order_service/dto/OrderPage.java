@@ -0,0 +1,6 @@
+package com.ms.order_service.dto;
+
+import java.util.List;
+
+public record OrderPage(List<OrderDTO> orders, String nextCursor) {
+}
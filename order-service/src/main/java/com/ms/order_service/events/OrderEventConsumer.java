@@ -80,4 +80,9 @@ public class OrderEventConsumer {
             throw new RuntimeException(e);
         }
     }
+
+    @KafkaListener(topics = "expired-hold", groupId = "expire")
+    public void receiveHoldExpiry(ConsumerRecord<String, String> message) {
+        orderService.expireOrder(message.value());
+    }
 }
@@ -0,0 +1,8 @@
+package com.ms.order_service.exception;
+
+public class InvalidArgumentException extends RuntimeException {
+
+    public InvalidArgumentException(String message) {
+        super(message);
+    }
+}
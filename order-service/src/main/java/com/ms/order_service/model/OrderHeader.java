@@ -0,0 +1,33 @@
+package com.ms.order_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * The order level fields of an order, one row per order. Its products are {@link OrderLine}s.
+ */
+@Entity
+@Table(name = "t_order_header")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderHeader implements Serializable {
+
+    @Id
+    private String id;
+
+    private String email;
+    private OrderStatus status;
+    private boolean isArchived;
+    @CreationTimestamp
+    private Timestamp order_date;
+    private Timestamp execution_date;
+}
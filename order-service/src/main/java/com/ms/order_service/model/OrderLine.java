@@ -0,0 +1,30 @@
+package com.ms.order_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+@Entity
+@Table(name = "t_order_line")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(OrderLineId.class)
+public class OrderLine implements Serializable {
+
+    @Id
+    private String orderId;
+    @Id
+    private String productId;
+
+    private String productName;
+    private int amount;
+    private BigDecimal price;
+}
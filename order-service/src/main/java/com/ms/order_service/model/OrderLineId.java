@@ -9,10 +9,9 @@ import java.io.Serializable;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class OrderProductId implements Serializable {
+public class OrderLineId implements Serializable {
 
-    private String id;
-    private String email;
+    private String orderId;
     private String productId;
 
 }
@@ -0,0 +1,13 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.model.OrderLine;
+import com.ms.order_service.model.OrderLineId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrderLineRepository extends JpaRepository<OrderLine, OrderLineId> {
+    List<OrderLine> findByOrderId(String orderId);
+}
@@ -0,0 +1,29 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.dto.OrderFilter;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderProduct;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface OrderListingRepository {
+
+    /**
+     * Returns the first orders matching the filter after its keyset position, ordered by order date and id.
+     */
+    List<OrderHeader> findPage(OrderFilter filter);
+
+    /**
+     * Streams the products of every order matching the filter in the same order as the pages, reading them
+     * through a JDBC cursor that holds the given number of rows at a time. The products of one order come in
+     * no particular order. The stream must be closed.
+     */
+    Stream<OrderProduct> streamOrderProducts(OrderFilter filter, int fetchSize);
+
+    /**
+     * Streams the products of every order grouped by user, in the order of the (email, is_archived, order_date)
+     * index, through a JDBC cursor like {@link #streamOrderProducts}. The stream must be closed.
+     */
+    Stream<OrderProduct> streamOrderProductsByEmail(int fetchSize);
+}
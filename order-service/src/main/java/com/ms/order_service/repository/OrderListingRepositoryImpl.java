@@ -0,0 +1,71 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.dto.OrderFilter;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderProduct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class OrderListingRepositoryImpl implements OrderListingRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<OrderHeader> findPage(OrderFilter filter) {
+        Map<String, Object> parameters = new HashMap<>();
+        TypedQuery<OrderHeader> query = entityManager.createQuery("select h from OrderHeader h" + where(filter, parameters) +
+                " order by h.order_date, h.id", OrderHeader.class);
+        parameters.forEach(query::setParameter);
+        return query.setMaxResults(filter.size()).getResultList();
+    }
+
+    // ordered by the order date index alone, the lines of each order are sorted by the caller
+    @Override
+    public Stream<OrderProduct> streamOrderProducts(OrderFilter filter, int fetchSize) {
+        Map<String, Object> parameters = new HashMap<>();
+        TypedQuery<OrderProduct> query = entityManager.createQuery(OrderRepository.ORDER_PRODUCTS + where(filter, parameters) +
+                " order by h.order_date, h.id", OrderProduct.class);
+        parameters.forEach(query::setParameter);
+        return query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize).getResultStream();
+    }
+
+    // no line ordering, which would sort the whole table instead of following the index
+    @Override
+    public Stream<OrderProduct> streamOrderProductsByEmail(int fetchSize) {
+        return entityManager.createQuery(OrderRepository.ORDER_PRODUCTS + "order by h.email, h.isArchived, h.order_date, h.id", OrderProduct.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .getResultStream();
+    }
+
+    // only the filters that are set go into the query, so that it stays a range over one of the order date indexes
+    private String where(OrderFilter filter, Map<String, Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.status() != null) {
+            conditions.add("h.status = :status");
+            parameters.put("status", filter.status());
+        }
+        if (filter.from() != null) {
+            conditions.add("h.order_date >= :from");
+            parameters.put("from", filter.from());
+        }
+        if (filter.to() != null) {
+            conditions.add("h.order_date < :to");
+            parameters.put("to", filter.to());
+        }
+        if (filter.afterDate() != null) {
+            conditions.add("(h.order_date > :afterDate or (h.order_date = :afterDate and h.id > :afterId))");
+            parameters.put("afterDate", filter.afterDate());
+            parameters.put("afterId", filter.afterId());
+        }
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+}
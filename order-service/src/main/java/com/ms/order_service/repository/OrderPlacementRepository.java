@@ -0,0 +1,15 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderLine;
+
+import java.util.List;
+
+public interface OrderPlacementRepository {
+
+    /**
+     * Inserts a new order and its lines without looking them up first. The lines are sent as one JDBC batch,
+     * which the driver rewrites into a single multi-row INSERT.
+     */
+    void insertOrder(OrderHeader orderHeader, List<OrderLine> orderLines);
+}
@@ -0,0 +1,21 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderLine;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.List;
+
+public class OrderPlacementRepositoryImpl implements OrderPlacementRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // save() merges entities with assigned ids, which selects every row before inserting it
+    @Override
+    public void insertOrder(OrderHeader orderHeader, List<OrderLine> orderLines) {
+        entityManager.persist(orderHeader);
+        orderLines.forEach(entityManager::persist);
+    }
+}
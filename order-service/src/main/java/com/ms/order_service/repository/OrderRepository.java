@@ -1,21 +1,56 @@
 package com.ms.order_service.repository;
 
+import com.ms.order_service.model.OrderHeader;
 import com.ms.order_service.model.OrderProduct;
-import com.ms.order_service.model.OrderProductId;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
-public interface OrderRepository extends JpaRepository<OrderProduct, OrderProductId> {
-    List<OrderProduct> findById(String orderId);
+public interface OrderRepository extends JpaRepository<OrderHeader, String>, OrderStatusRepository, OrderPlacementRepository, OrderListingRepository {
+
+    String ORDER_PRODUCTS = "select new com.ms.order_service.model.OrderProduct(h.id, h.email, l.productId, l.productName, l.amount, " +
+            "h.status, l.price, h.isArchived, h.order_date, h.execution_date) from OrderHeader h join OrderLine l on l.orderId = h.id ";
+
+    // with email and is_archived both fixed the (email, is_archived, order_date) index, which ends with the primary key,
+    // serves this ordering, by email alone both archive states are merged by a sort of that user's rows. Lines are
+    // left out of the ordering and sorted per order by the callers, so that the sort never covers the joined rows
+    String BY_DATE = " order by h.order_date, h.id";
+
+    @Query(ORDER_PRODUCTS + "where h.id in ?1" + BY_DATE)
+    List<OrderProduct> findOrderProductsByIdIn(List<String> orderIds);
+
+    @Query(ORDER_PRODUCTS + "where h.id = ?1 order by l.productId")
+    List<OrderProduct> findOrderProductsById(String orderId);
+
+    @Query(ORDER_PRODUCTS + "where h.email = ?1" + BY_DATE)
+    List<OrderProduct> findOrderProductsByEmail(String email);
+
+    @Query(ORDER_PRODUCTS + "where h.email = ?1 and h.isArchived = false" + BY_DATE)
     List<OrderProduct> findByEmailAndIsArchivedIsFalse(String email);
+
+    @Query(ORDER_PRODUCTS + "where h.email = ?1 and h.isArchived = true" + BY_DATE)
     List<OrderProduct> findByEmailAndIsArchivedIsTrue(String email);
+
+    @Query(ORDER_PRODUCTS + "where h.id = ?1 and h.email = ?2 and h.isArchived = false order by l.productId")
     List<OrderProduct> findByIdAndEmailAndIsArchivedIsFalse(String orderId, String email);
+
+    @Query(ORDER_PRODUCTS + "where h.id = ?1 and h.email = ?2 and h.isArchived = true order by l.productId")
     List<OrderProduct> findByIdAndEmailAndIsArchivedIsTrue(String orderId, String email);
-    void deleteById(String orderId);
+
+    // processing orders are not archived, a miss means the order is not there, is archived already or is processing
+    @Modifying
+    @Query("update OrderHeader h set h.isArchived = true where h.id = ?1 and h.email = ?2 and h.isArchived = false " +
+            "and h.status <> com.ms.order_service.model.OrderStatus.PROCESSING")
+    int archive(String orderId, String email);
+
+    @Modifying
+    @Query("update OrderHeader h set h.isArchived = false where h.id = ?1 and h.email = ?2 and h.isArchived = true")
+    int unarchive(String orderId, String email);
 
     @CacheEvict(value = "*", allEntries = true)
     void deleteAll();
@@ -0,0 +1,17 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.model.OrderStatus;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+public interface OrderStatusRepository {
+
+    /**
+     * Sets the status and execution date of an order with a single update, returning the email and archived
+     * flag of the order it changed, or nothing if there is no order with that id.
+     */
+    Optional<UpdatedOrder> updateStatus(String orderId, OrderStatus status, Timestamp executionDate);
+
+    record UpdatedOrder(String email, boolean archived) {}
+}
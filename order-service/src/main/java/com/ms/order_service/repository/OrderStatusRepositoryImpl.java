@@ -0,0 +1,36 @@
+package com.ms.order_service.repository;
+
+import com.ms.order_service.model.OrderStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+public class OrderStatusRepositoryImpl implements OrderStatusRepository {
+
+    private static final String UPDATE_STATUS = "UPDATE t_order_header SET status = ?, execution_date = ? WHERE id = ?";
+    // MySQL has no UPDATE ... RETURNING, so the row is read back by its key while the update still holds its lock
+    private static final String UPDATED_ORDER = "SELECT email, is_archived FROM t_order_header WHERE id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<UpdatedOrder> updateStatus(String orderId, OrderStatus status, Timestamp executionDate) {
+        int updated = entityManager.createNativeQuery(UPDATE_STATUS)
+                .setParameter(1, status.ordinal())
+                .setParameter(2, executionDate)
+                .setParameter(3, orderId)
+                .executeUpdate();
+        if (updated == 0) {
+            return Optional.empty();
+        }
+
+        Object[] row = (Object[]) entityManager.createNativeQuery(UPDATED_ORDER)
+                .setParameter(1, orderId)
+                .getSingleResult();
+        boolean archived = row[1] instanceof Boolean flag ? flag : ((Number) row[1]).intValue() != 0;
+        return Optional.of(new UpdatedOrder((String) row[0], archived));
+    }
+}
@@ -2,7 +2,6 @@ package com.ms.order_service.service;
 
 import com.ms.order_service.dto.OrderDTO;
 import com.ms.order_service.exception.ResourceNotFoundException;
-import com.ms.order_service.exception.UnauthorizedException;
 import com.ms.order_service.model.OrderProduct;
 import com.ms.order_service.repository.OrderRepository;
 import lombok.extern.slf4j.Slf4j;
@@ -11,7 +10,8 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,32 +26,21 @@ public class OrderCacheService {
         this.orderRepository = orderRepository;
     }
 
-    @Cacheable(value = "all-orders", key = "#role")
-    public List<OrderDTO> getOrders(String role){
-        log.info("getOrders called -- accessing database");
-        if(role.equals("ADMIN")){
-            List<OrderProduct> products = orderRepository.findAll();
-            return mapProductsToOrderDTO(products);
-        } else {
-            throw new UnauthorizedException("Unauthorized to perform this action");
-        }
-    }
-
-    @Cacheable(value = "unarchived", key = "#email")
+    @Cacheable(value = "unarchived", key = "#email", sync = true)
     public List<OrderDTO> getUnarchivedOrdersByEmail(String email){
         log.info("getUnarchivedOrdersByEmail called -- accessing database");
         List<OrderProduct> products = orderRepository.findByEmailAndIsArchivedIsFalse(email);
         return mapProductsToOrderDTO(products);
     }
 
-    @Cacheable(value = "archived", key = "#email")
+    @Cacheable(value = "archived", key = "#email", sync = true)
     public List<OrderDTO> getArchivedOrdersByEmail(String email){
         log.info("getArchivedOrdersByEmail called -- accessing database");
         List<OrderProduct> products = orderRepository.findByEmailAndIsArchivedIsTrue(email);
         return mapProductsToOrderDTO(products);
     }
 
-    @Cacheable(value = "unarchived", key = "#orderId+#email")
+    @Cacheable(value = "unarchived", key = "#orderId+#email", sync = true)
     public OrderDTO getUnarchivedOrderByOrderIdAndEmail(String orderId, String email){
         log.info("getUnarchivedOrdersByOrderIdEmail called -- accessing database");
         List<OrderProduct> orderProducts = orderRepository.findByIdAndEmailAndIsArchivedIsFalse(orderId, email);
@@ -61,7 +50,7 @@ public class OrderCacheService {
         throw new ResourceNotFoundException("Order not found with ID: " + orderId);
     }
 
-    @Cacheable(value = "archived", key = "#orderId+#email")
+    @Cacheable(value = "archived", key = "#orderId+#email", sync = true)
     public OrderDTO getArchivedOrderByOrderIdAndEmail(String orderId, String email){
         log.info("getArchivedOrdersByOrderIdEmail called -- accessing database");
         List<OrderProduct> orderProducts = orderRepository.findByIdAndEmailAndIsArchivedIsTrue(orderId, email);
@@ -71,8 +60,9 @@ public class OrderCacheService {
         throw new ResourceNotFoundException("Order not found");
     }
 
+    // keeps the orders in the order the query returned them, the lines of each order are sorted by product
     private ArrayList<OrderDTO> mapProductsToOrderDTO(List<OrderProduct> products){
-        Map<String, OrderDTO> map = new HashMap<>();
+        Map<String, OrderDTO> map = new LinkedHashMap<>();
         for (OrderProduct orderProduct : products) {
             if(map.containsKey(orderProduct.getId())){
                 map.get(orderProduct.getId()).order().add(orderProduct);
@@ -82,6 +72,7 @@ public class OrderCacheService {
                 map.put(orderProduct.getId(), new OrderDTO(orderProducts));
             }
         }
+        map.values().forEach(order -> order.order().sort(Comparator.comparing(OrderProduct::getProductId)));
         return new ArrayList<>(map.values());
     }
 }
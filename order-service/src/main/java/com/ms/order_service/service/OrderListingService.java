@@ -0,0 +1,141 @@
+package com.ms.order_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.order_service.dto.OrderDTO;
+import com.ms.order_service.dto.OrderFilter;
+import com.ms.order_service.dto.OrderPage;
+import com.ms.order_service.exception.InvalidArgumentException;
+import com.ms.order_service.exception.ResourceNotFoundException;
+import com.ms.order_service.exception.UnauthorizedException;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderProduct;
+import com.ms.order_service.model.OrderStatus;
+import com.ms.order_service.repository.OrderRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Lists the orders of every user for admins, a page at a time or as a stream, ordered by order date and id.
+ * Pages continue from a cursor holding the date and id of the last order returned, so no page is more expensive
+ * than the first.
+ */
+@Service
+@Slf4j
+public class OrderListingService {
+
+    private final OrderRepository orderRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${order.listing.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${order.listing.export-fetch-size:500}")
+    private int exportFetchSize;
+
+    @Autowired
+    public OrderListingService(OrderRepository orderRepository, ObjectMapper objectMapper) {
+        this.orderRepository = orderRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public OrderFilter filterOf(String role, String status, Instant from, Instant to, String after, int size) {
+        if(!"ADMIN".equals(role)) {
+            throw new UnauthorizedException("Unauthorized to perform this action");
+        }
+
+        OrderStatus orderStatus = null;
+        if(status != null && !status.isBlank()) {
+            try {
+                orderStatus = OrderStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ResourceNotFoundException("Status not found: " + status);
+            }
+        }
+
+        Timestamp afterDate = null;
+        String afterId = null;
+        if(after != null && !after.isBlank()) {
+            try {
+                String cursor = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8);
+                int separator = cursor.indexOf(':');
+                afterDate = new Timestamp(Long.parseLong(cursor.substring(0, separator)));
+                afterId = cursor.substring(separator + 1);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new InvalidArgumentException("Malformed cursor: " + after);
+            }
+        }
+
+        return new OrderFilter(orderStatus, from == null ? null : Timestamp.from(from), to == null ? null : Timestamp.from(to),
+                afterDate, afterId, Math.clamp(size, 1, maxPageSize));
+    }
+
+    @Transactional
+    public OrderPage getOrders(OrderFilter filter) {
+        log.info("getOrders called -- accessing database");
+        List<OrderHeader> orderHeaders = orderRepository.findPage(filter);
+        if(orderHeaders.isEmpty()) {
+            return new OrderPage(List.of(), null);
+        }
+
+        List<OrderProduct> products = orderRepository.findOrderProductsByIdIn(orderHeaders.stream().map(OrderHeader::getId).toList());
+        List<OrderDTO> orders = new ArrayList<>();
+        for(OrderProduct product : products) {
+            if(orders.isEmpty() || !orders.getLast().order().getFirst().getId().equals(product.getId())) {
+                orders.add(new OrderDTO(new ArrayList<>()));
+            }
+            orders.getLast().order().add(product);
+        }
+        orders.forEach(order -> order.order().sort(Comparator.comparing(OrderProduct::getProductId)));
+
+        String nextCursor = orderHeaders.size() == filter.size() ? cursorOf(orderHeaders.getLast()) : null;
+        return new OrderPage(orders, nextCursor);
+    }
+
+    /**
+     * Writes every order matching the filter as a line of JSON. Only the order being written is held in memory,
+     * the rows come from a cursor of a fixed fetch size.
+     */
+    @Transactional
+    public void exportOrders(OrderFilter filter, OutputStream outputStream) throws IOException {
+        log.info("exportOrders called -- accessing database");
+        try(Stream<OrderProduct> products = orderRepository.streamOrderProducts(filter, exportFetchSize)) {
+            Iterator<OrderProduct> iterator = products.iterator();
+            List<OrderProduct> order = new ArrayList<>();
+            while(iterator.hasNext()) {
+                OrderProduct product = iterator.next();
+                if(!order.isEmpty() && !order.getFirst().getId().equals(product.getId())) {
+                    writeOrder(order, outputStream);
+                    order = new ArrayList<>();
+                }
+                order.add(product);
+            }
+            if(!order.isEmpty()) {
+                writeOrder(order, outputStream);
+            }
+        }
+        outputStream.flush();
+    }
+
+    // the cursor only orders the orders, their lines are sorted here like the lines of a page
+    private void writeOrder(List<OrderProduct> order, OutputStream outputStream) throws IOException {
+        order.sort(Comparator.comparing(OrderProduct::getProductId));
+        outputStream.write(objectMapper.writeValueAsBytes(new OrderDTO(order)));
+        outputStream.write('\n');
+    }
+
+    private String cursorOf(OrderHeader orderHeader) {
+        String cursor = orderHeader.getOrder_date().getTime() + ":" + orderHeader.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,412 @@
+package com.ms.order_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.order_service.dto.OrderDTO;
+import com.ms.order_service.exception.ResourceNotFoundException;
+import com.ms.order_service.exception.UnauthorizedException;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderLine;
+import com.ms.order_service.model.OrderProduct;
+import com.ms.order_service.model.OrderStatus;
+import com.ms.order_service.repository.OrderRepository;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Read model of the orders of each user, kept in a Redis hash per user so that the user's order endpoints never
+ * reach MySQL. Every order has a few fields in its user's hash, named after the order id: its lines, status,
+ * archived flag and dates. Each write patches only the fields it changed, once its transaction has committed,
+ * so concurrent patches of the same order do not overwrite each other. An order without lines yet is not shown.
+ * A user's hash is built from the database the first time it is read without having been built, and every hash is
+ * regenerated by {@link #rebuild(String)}. While any build runs, patches also log the fields they touch, and a build
+ * re-applies the logged fields over what it read, so patches landing during a build are not lost.
+ */
+@Service
+@Slf4j
+public class OrderProjectionService {
+
+    private static final String KEY_PREFIX = "order-projection::";
+    // kept out of the hash key space, so that scanning the hashes does not reach them
+    private static final String PATCHED_PREFIX = "order-projection-patched::";
+    private static final String BUILDS = "order-projection-builds";
+    // set on a user's hash when it is built from the database
+    private static final String BUILT = "built";
+    private static final String LINES = "lines";
+    private static final String STATUS = "status";
+    private static final String ARCHIVED = "archived";
+    private static final String ORDER_DATE = "order_date";
+    private static final String EXECUTION_DATE = "execution_date";
+    private static final List<String> FIELDS = List.of(LINES, STATUS, ARCHIVED, ORDER_DATE, EXECUTION_DATE);
+
+    // sets, sets if absent or deletes fields of a hash, logging them while a build runs
+    private static final DefaultRedisScript<Long> PATCH_SCRIPT = new DefaultRedisScript<>("""
+            local logged = tonumber(redis.call('get', KEYS[3]) or '0') > 0
+            local step = ARGV[1] == 'del' and 1 or 2
+            for i = 3, #ARGV, step do
+                if ARGV[1] == 'set' then
+                    redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])
+                elseif ARGV[1] == 'setnx' then
+                    redis.call('hsetnx', KEYS[1], ARGV[i], ARGV[i + 1])
+                else
+                    redis.call('hdel', KEYS[1], ARGV[i])
+                end
+                if logged then
+                    redis.call('sadd', KEYS[2], ARGV[i])
+                end
+            end
+            if logged then
+                redis.call('expire', KEYS[2], ARGV[2])
+            end
+            return 1
+            """, Long.class);
+
+    // swaps in the fields read from the database, keeping the current value of every field patched since
+    private static final DefaultRedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>("""
+            local patched = {}
+            for _, field in ipairs(redis.call('smembers', KEYS[2])) do
+                patched[field] = redis.call('hget', KEYS[1], field)
+            end
+            redis.call('del', KEYS[1])
+            for i = 2, #ARGV, 2 do
+                redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            for field, value in pairs(patched) do
+                if value then
+                    redis.call('hset', KEYS[1], field, value)
+                else
+                    redis.call('hdel', KEYS[1], field)
+                end
+            end
+            redis.call('expire', KEYS[3], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // a hash patched since the build started may hold an order placed after the database was read, it is only
+    // marked for building again on its next read
+    private static final DefaultRedisScript<Long> DROP_STALE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[2]) == 0 then
+                return redis.call('del', KEYS[1])
+            end
+            redis.call('hdel', KEYS[1], ARGV[1])
+            return 0
+            """, Long.class);
+
+    private static final DefaultRedisScript<Long> END_BUILD_SCRIPT = new DefaultRedisScript<>("""
+            local builds = redis.call('decr', KEYS[1])
+            if builds <= 0 then
+                redis.call('del', KEYS[1])
+            end
+            return builds
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final OrderRepository orderRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${order.projection.rebuild-fetch-size:500}")
+    private int rebuildFetchSize;
+
+    // how long patches keep being logged after a build stopped renewing it, in case it died before ending
+    @Value("${order.projection.build-log-ttl:1h}")
+    private Duration buildLogTtl;
+
+    @Autowired
+    public OrderProjectionService(StringRedisTemplate redisTemplate, OrderRepository orderRepository, ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.orderRepository = orderRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    public List<OrderDTO> getOrdersByEmail(String email, boolean archived) {
+        Map<String, String> entries = redisTemplate.<String, String>opsForHash().entries(key(email));
+        if (!entries.containsKey(BUILT)) {
+            buildUser(email);
+            entries = redisTemplate.<String, String>opsForHash().entries(key(email));
+        }
+
+        Map<String, Map<String, String>> orders = new HashMap<>();
+        entries.forEach((field, value) -> {
+            int separator = field.lastIndexOf(':');
+            if (separator < 0) {
+                return;
+            }
+            orders.computeIfAbsent(field.substring(0, separator), orderId -> new HashMap<>()).put(field.substring(separator + 1), value);
+        });
+
+        return orders.entrySet().stream()
+                .map(order -> mapFieldsToOrderDTO(order.getKey(), email, order.getValue()))
+                .filter(Objects::nonNull)
+                .filter(order -> order.order().getFirst().isArchived() == archived)
+                .sorted(Comparator.comparing((OrderDTO order) -> order.order().getFirst().getOrder_date(), Comparator.nullsLast(Comparator.<Timestamp>naturalOrder()))
+                        .thenComparing(order -> order.order().getFirst().getId()))
+                .toList();
+    }
+
+    public OrderDTO getOrderByOrderIdAndEmail(String orderId, String email, boolean archived) {
+        List<String> keys = new ArrayList<>(FIELDS.stream().map(field -> field(orderId, field)).toList());
+        keys.add(BUILT);
+        List<String> values = redisTemplate.<String, String>opsForHash().multiGet(key(email), keys);
+        if (values.getLast() == null) {
+            buildUser(email);
+            values = redisTemplate.<String, String>opsForHash().multiGet(key(email), keys);
+        }
+
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < FIELDS.size(); i++) {
+            if (values.get(i) != null) {
+                fields.put(FIELDS.get(i), values.get(i));
+            }
+        }
+
+        OrderDTO order = mapFieldsToOrderDTO(orderId, email, fields);
+        if (order == null || order.order().getFirst().isArchived() != archived) {
+            throw new ResourceNotFoundException("Order not found with ID: " + orderId);
+        }
+        return order;
+    }
+
+    public void orderPlaced(OrderHeader orderHeader, List<OrderLine> orderLines) {
+        afterCommit(orderHeader.getId(), () -> {
+            Map<String, String> fields = headerFields(orderHeader);
+            fields.put(LINES, writeLines(orderLines));
+            List<String> arguments = new ArrayList<>();
+            fields.forEach((field, value) -> {
+                arguments.add(field(orderHeader.getId(), field));
+                arguments.add(value);
+            });
+            // a placed order may be patched by its first events before its own write lands, which must not undo them
+            patch(orderHeader.getEmail(), "setnx", arguments);
+        });
+    }
+
+    public void linesChanged(String orderId, String email, List<OrderLine> orderLines) {
+        afterCommit(orderId, () -> patch(email, "set", List.of(field(orderId, LINES), writeLines(orderLines))));
+    }
+
+    public void statusChanged(String orderId, String email, OrderStatus status, Timestamp executionDate) {
+        afterCommit(orderId, () -> patch(email, "set", List.of(
+                field(orderId, STATUS), status.name(),
+                field(orderId, EXECUTION_DATE), String.valueOf(executionDate.getTime()))));
+    }
+
+    public void archivedChanged(String orderId, String email, boolean archived) {
+        afterCommit(orderId, () -> patch(email, "set", List.of(field(orderId, ARCHIVED), String.valueOf(archived))));
+    }
+
+    public void orderDeleted(String orderId, String email) {
+        afterCommit(orderId, () -> patch(email, "del", FIELDS.stream().map(field -> field(orderId, field)).toList()));
+    }
+
+    /**
+     * Regenerates the hash of every user from the database and drops the hashes of users left without orders.
+     * The orders are read through a cursor in (email, archived, order date) index order, so only one user's
+     * orders are held at a time, and each user's hash is swapped in with a single script. Returns the number of
+     * users rebuilt.
+     */
+    @Transactional
+    public int rebuild(String role) {
+        if (!"ADMIN".equals(role)) {
+            throw new UnauthorizedException("Unauthorized to perform this action");
+        }
+        log.info("rebuilding order projection -- accessing database");
+
+        // patches are logged from here on, before the hashes are listed and the database is read
+        startBuild();
+        try {
+            // hashes created while rebuilding are not in this set, so they are kept
+            Set<String> stale = new HashSet<>();
+            try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+                keys.forEachRemaining(stale::add);
+            }
+
+            int users = 0;
+            try (Stream<OrderProduct> products = orderRepository.streamOrderProductsByEmail(rebuildFetchSize)) {
+                Iterator<OrderProduct> iterator = products.iterator();
+                List<OrderProduct> userProducts = new ArrayList<>();
+                while (iterator.hasNext()) {
+                    OrderProduct product = iterator.next();
+                    if (!userProducts.isEmpty() && !userProducts.getFirst().getEmail().equals(product.getEmail())) {
+                        replaceUser(userProducts.getFirst().getEmail(), userProducts);
+                        stale.remove(key(userProducts.getFirst().getEmail()));
+                        users++;
+                        userProducts = new ArrayList<>();
+                    }
+                    userProducts.add(product);
+                }
+                if (!userProducts.isEmpty()) {
+                    replaceUser(userProducts.getFirst().getEmail(), userProducts);
+                    stale.remove(key(userProducts.getFirst().getEmail()));
+                    users++;
+                }
+            }
+
+            long dropped = 0;
+            for (String key : stale) {
+                String email = key.substring(KEY_PREFIX.length());
+                dropped += redisTemplate.execute(DROP_STALE_SCRIPT, List.of(key, patchedKey(email)), BUILT);
+            }
+            log.info("rebuilt order projection of {} users, dropped {}", users, dropped);
+            return users;
+        } finally {
+            endBuild();
+        }
+    }
+
+    private void buildUser(String email) {
+        log.info("building order projection of {} -- accessing database", email);
+        startBuild();
+        try {
+            replaceUser(email, orderRepository.findOrderProductsByEmail(email));
+        } finally {
+            endBuild();
+        }
+    }
+
+    private void replaceUser(String email, List<OrderProduct> products) {
+        Map<String, List<OrderProduct>> orders = new LinkedHashMap<>();
+        products.forEach(product -> orders.computeIfAbsent(product.getId(), orderId -> new ArrayList<>()).add(product));
+
+        List<String> arguments = new ArrayList<>();
+        arguments.add(String.valueOf(buildLogTtl.toSeconds()));
+        arguments.add(BUILT);
+        arguments.add(String.valueOf(System.currentTimeMillis()));
+        orders.forEach((orderId, orderProducts) -> {
+            OrderProduct first = orderProducts.getFirst();
+            headerFields(new OrderHeader(orderId, first.getEmail(), first.getStatus(), first.isArchived(), first.getOrder_date(), first.getExecution_date()))
+                    .forEach((field, value) -> {
+                        arguments.add(field(orderId, field));
+                        arguments.add(value);
+                    });
+            arguments.add(field(orderId, LINES));
+            arguments.add(writeLines(orderProducts.stream()
+                    .sorted(Comparator.comparing(OrderProduct::getProductId))
+                    .map(product -> new OrderLine(orderId, product.getProductId(), product.getProductName(), product.getAmount(), product.getPrice()))
+                    .toList()));
+        });
+
+        redisTemplate.execute(REPLACE_SCRIPT, List.of(key(email), patchedKey(email), BUILDS), arguments.toArray());
+    }
+
+    private void startBuild() {
+        redisTemplate.opsForValue().increment(BUILDS);
+        redisTemplate.expire(BUILDS, buildLogTtl);
+    }
+
+    private void endBuild() {
+        redisTemplate.execute(END_BUILD_SCRIPT, List.of(BUILDS));
+    }
+
+    private void patch(String email, String mode, List<String> fields) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add(mode);
+        arguments.add(String.valueOf(buildLogTtl.toSeconds()));
+        arguments.addAll(fields);
+        redisTemplate.execute(PATCH_SCRIPT, List.of(key(email), patchedKey(email), BUILDS), arguments.toArray());
+    }
+
+    private Map<String, String> headerFields(OrderHeader orderHeader) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put(STATUS, orderHeader.getStatus().name());
+        fields.put(ARCHIVED, String.valueOf(orderHeader.isArchived()));
+        if (orderHeader.getOrder_date() != null) {
+            fields.put(ORDER_DATE, String.valueOf(orderHeader.getOrder_date().getTime()));
+        }
+        if (orderHeader.getExecution_date() != null) {
+            fields.put(EXECUTION_DATE, String.valueOf(orderHeader.getExecution_date().getTime()));
+        }
+        return fields;
+    }
+
+    private OrderDTO mapFieldsToOrderDTO(String orderId, String email, Map<String, String> fields) {
+        if (fields.get(LINES) == null || fields.get(STATUS) == null) {
+            return null;
+        }
+        OrderStatus status = OrderStatus.valueOf(fields.get(STATUS));
+        boolean archived = Boolean.parseBoolean(fields.get(ARCHIVED));
+        Timestamp orderDate = timestampOf(fields.get(ORDER_DATE));
+        Timestamp executionDate = timestampOf(fields.get(EXECUTION_DATE));
+
+        List<OrderProduct> orderProducts = new ArrayList<>();
+        for (ProjectedLine line : readLines(fields.get(LINES))) {
+            orderProducts.add(new OrderProduct(orderId, email, line.productId(), line.productName(), line.amount(), status, line.price(), archived, orderDate, executionDate));
+        }
+        return orderProducts.isEmpty() ? null : new OrderDTO(orderProducts);
+    }
+
+    // lines are kept in product id order, as the database returns them
+    private String writeLines(List<OrderLine> orderLines) {
+        List<ProjectedLine> lines = orderLines.stream()
+                .map(line -> new ProjectedLine(line.getProductId(), line.getProductName(), line.getAmount(), line.getPrice()))
+                .sorted(Comparator.comparing(ProjectedLine::productId))
+                .toList();
+        try {
+            return objectMapper.writeValueAsString(lines);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private List<ProjectedLine> readLines(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Timestamp timestampOf(String millis) {
+        return millis == null ? null : new Timestamp(Long.parseLong(millis));
+    }
+
+    // a failed patch leaves the projection behind the database until the next rebuild, the write itself stands
+    private void afterCommit(String orderId, Runnable patch) {
+        Runnable guarded = () -> {
+            try {
+                patch.run();
+            } catch (RuntimeException e) {
+                log.warn("order projection of order {} not patched, a rebuild will repair it", orderId, e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    guarded.run();
+                }
+            });
+        } else {
+            guarded.run();
+        }
+    }
+
+    private String key(String email) {
+        return KEY_PREFIX + email;
+    }
+
+    private String patchedKey(String email) {
+        return PATCHED_PREFIX + email;
+    }
+
+    private String field(String orderId, String field) {
+        return orderId + ":" + field;
+    }
+
+    private record ProjectedLine(String productId, String productName, int amount, BigDecimal price) {}
+}
@@ -6,9 +6,13 @@ import com.ms.order_service.dto.OrderDTO;
 import com.ms.order_service.events.OrderEventProducer;
 import com.ms.order_service.exception.ResourceNotFoundException;
 import com.ms.order_service.exception.UnauthorizedException;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderLine;
 import com.ms.order_service.model.OrderProduct;
 import com.ms.order_service.model.OrderStatus;
+import com.ms.order_service.repository.OrderLineRepository;
 import com.ms.order_service.repository.OrderRepository;
+import com.ms.order_service.repository.OrderStatusRepository;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
@@ -16,6 +20,7 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -23,31 +28,36 @@ import java.util.*;
 public class OrderService {
 
     private final OrderRepository orderRepository;
+    private final OrderLineRepository orderLineRepository;
     private final OrderCacheService orderCacheService;
+    private final OrderProjectionService orderProjectionService;
     private final OrderEventProducer orderEventProducer;
     private final CacheManager cacheManager;
 
     @Autowired
-    public OrderService(OrderRepository orderRepository, OrderCacheService orderCacheService, OrderEventProducer orderEventProducer, CacheManager cacheManager) {
+    public OrderService(OrderRepository orderRepository, OrderLineRepository orderLineRepository, OrderCacheService orderCacheService, OrderProjectionService orderProjectionService,
+                        OrderEventProducer orderEventProducer, CacheManager cacheManager) {
         this.orderRepository = orderRepository;
+        this.orderLineRepository = orderLineRepository;
         this.orderCacheService = orderCacheService;
+        this.orderProjectionService = orderProjectionService;
         this.orderEventProducer = orderEventProducer;
         this.cacheManager = cacheManager;
     }
 
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = "unarchived", key = "#cart.cart().getFirst().email()"),
-            @CacheEvict(value = "all-orders", allEntries = true)
-    })
+    @CacheEvict(value = "unarchived", key = "#cart.cart().getFirst().email()")
     public void placeCartOrder(CartDTO cart){
         String orderId = UUID.randomUUID().toString();
         OrderDTO orderDTO = new OrderDTO(new ArrayList<>());
+        List<OrderLine> orderLines = new ArrayList<>();
         for (CartProductDTO product : cart.cart()) {
-            OrderProduct orderProduct = mapCartProductToOrderProduct(product, orderId);
-            orderDTO.order().add(orderProduct);
-            orderRepository.save(orderProduct);
+            orderDTO.order().add(mapCartProductToOrderProduct(product, orderId));
+            orderLines.add(new OrderLine(orderId, product.productId(), product.productName(), product.amount(), null));
         }
+        OrderHeader orderHeader = new OrderHeader(orderId, cart.cart().getFirst().email(), OrderStatus.PROCESSING, false, null, null);
+        orderRepository.insertOrder(orderHeader, orderLines);
+        orderProjectionService.orderPlaced(orderHeader, orderLines);
         orderEventProducer.checkOrder(orderDTO);
     }
 
@@ -66,20 +76,18 @@ public class OrderService {
     }
 
     @Transactional
-    @CacheEvict(value = "all-orders", allEntries = true)
     public void acceptOrder(OrderDTO orderDTO){
         if (orderDTO.order() != null && !orderDTO.order().isEmpty()) {
             String orderId = orderDTO.order().getFirst().getId();
-            String email = orderDTO.order().getFirst().getEmail();
-            OrderDTO savedOrder = orderCacheService.getUnarchivedOrderByOrderIdAndEmail(orderId, email);
-
-            List<OrderProduct> orderProducts = savedOrder.order();
-            for (int i = 0; i < orderDTO.order().size(); i++) {
-                orderProducts.get(i).setPrice(orderDTO.order().get(i).getPrice());
-            }
-
-            orderRepository.saveAll(orderProducts);
-            evictOrderCache(orderDTO.order().getFirst().getId());
+            Map<String, BigDecimal> prices = new HashMap<>();
+            orderDTO.order().forEach(orderProduct -> prices.put(orderProduct.getProductId(), orderProduct.getPrice()));
+
+            List<OrderLine> orderLines = orderLineRepository.findByOrderId(orderId);
+            orderLines.forEach(orderLine -> orderLine.setPrice(prices.get(orderLine.getProductId())));
+            orderLineRepository.saveAll(orderLines);
+            OrderHeader orderHeader = findHeader(orderId);
+            evictOrderCache(orderHeader);
+            orderProjectionService.linesChanged(orderId, orderHeader.getEmail(), orderLines);
         }
     }
 
@@ -87,58 +95,45 @@ public class OrderService {
     @Caching(evict = {
             @CacheEvict(value = "unarchived", key = "#orderId+#email"),
             @CacheEvict(value = "unarchived", key = "#email"),
-            @CacheEvict(value = "archived", key = "#email"),
-            @CacheEvict(value = "all-orders", allEntries = true)
+            @CacheEvict(value = "archived", key = "#email")
     })
     public void archiveOrderById(String orderId, String email){
-        OrderDTO orderDTO = orderCacheService.getUnarchivedOrderByOrderIdAndEmail(orderId, email);
-
-        if(!orderDTO.order().getFirst().getStatus().equals(OrderStatus.PROCESSING)) {
-            for (OrderProduct orderProduct : orderDTO.order()) {
-                orderProduct.setArchived(true);
-                orderRepository.save(orderProduct);
-            }
-        } else {
+        if(orderRepository.archive(orderId, email) == 0) {
+            // throws when the order is not there or archived already, otherwise it is processing
+            orderCacheService.getUnarchivedOrderByOrderIdAndEmail(orderId, email);
             throw new UnauthorizedException("Order cannot be archived while processing");
         }
+        orderProjectionService.archivedChanged(orderId, email, true);
     }
 
     @Transactional
     @Caching(evict = {
             @CacheEvict(value = "archived", key = "#orderId+#email"),
             @CacheEvict(value = "archived", key = "#email"),
-            @CacheEvict(value = "unarchived", key = "#email"),
-            @CacheEvict(value = "all-orders", allEntries = true)
+            @CacheEvict(value = "unarchived", key = "#email")
     })
     public void unarchiveOrderById(String orderId, String email){
-        OrderDTO orderDTO = orderCacheService.getArchivedOrderByOrderIdAndEmail(orderId, email);
-
-        for(OrderProduct orderProduct : orderDTO.order()){
-            orderProduct.setArchived(false);
-            orderRepository.save(orderProduct);
+        if(orderRepository.unarchive(orderId, email) == 0) {
+            throw new ResourceNotFoundException("Order not found");
         }
+        orderProjectionService.archivedChanged(orderId, email, false);
     }
 
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = "all-orders", allEntries = true)
-    })
     public void deleteOrderByOrderId(String orderId, String role){
         if(!role.equals("ADMIN")){ throw new UnauthorizedException("Unauthorized to perform this action"); }
-        List<OrderProduct> orderProducts = orderRepository.findById(orderId);
-        OrderDTO orderDTO = new OrderDTO(orderProducts);
-        if(!orderDTO.order().getFirst().getStatus().equals(OrderStatus.PROCESSING)){
-            evictOrderCache(orderId);
+        OrderHeader orderHeader = findHeader(orderId);
+        if(!orderHeader.getStatus().equals(OrderStatus.PROCESSING)){
+            evictOrderCache(orderHeader);
+            // lines go with their header through the foreign key
             orderRepository.deleteById(orderId);
+            orderProjectionService.orderDeleted(orderId, orderHeader.getEmail());
         } else {
             throw new UnauthorizedException("Order is processing and cannot be deleted");
         }
     }
 
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = "all-orders", allEntries = true)
-    })
     public void cancelOrder(String orderId, String email){
         OrderDTO orderDTO = orderCacheService.getUnarchivedOrderByOrderIdAndEmail(orderId, email);
 
@@ -151,38 +146,42 @@ public class OrderService {
     }
 
     @Transactional
-    @Caching(evict = {
-            @CacheEvict(value = "all-orders", allEntries = true)
-    })
     public void updateOrderStatus(String orderId, OrderStatus status){
-        OrderDTO orderDTO = new OrderDTO(orderRepository.findById(orderId));
-        evictOrderCache(orderId);
-        Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-        for (OrderProduct orderProduct : orderDTO.order()) {
-            orderProduct.setStatus(status);
-            orderProduct.setExecution_date(timestamp);
-            orderRepository.save(orderProduct);
-        }
+        Timestamp executionDate = new Timestamp(System.currentTimeMillis());
+        OrderStatusRepository.UpdatedOrder updated = orderRepository.updateStatus(orderId, status, executionDate)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+        evictOrderCache(orderId, updated.email(), updated.archived());
+        orderProjectionService.statusChanged(orderId, updated.email(), status, executionDate);
     }
 
-    private void evictOrderCache(String orderId){
-        OrderDTO orderDTO = new OrderDTO(orderRepository.findById(orderId));
-        if(orderDTO.order() != null && !orderDTO.order().isEmpty()) {
-            String email = orderDTO.order().getFirst().getEmail();
-            if (orderDTO.order().getFirst().isArchived()) {
-                Objects.requireNonNull(cacheManager.getCache("archived")).evict(orderId+email);
-                Objects.requireNonNull(cacheManager.getCache("archived")).evict(email);
-            } else {
-                Objects.requireNonNull(cacheManager.getCache("unarchived")).evict(orderId+email);
-                Objects.requireNonNull(cacheManager.getCache("unarchived")).evict(email);
-            }
+    // the stock held for the order was given back, an order still waiting for its payment can no longer be paid
+    @Transactional
+    public void expireOrder(String orderId){
+        orderRepository.findById(orderId)
+                .filter(orderHeader -> orderHeader.getStatus().equals(OrderStatus.PROCESSING))
+                .ifPresent(orderHeader -> updateOrderStatus(orderId, OrderStatus.FAILED));
+    }
+
+    private OrderHeader findHeader(String orderId){
+        return orderRepository.findById(orderId).orElseThrow(() -> new ResourceNotFoundException("Order not found with ID: " + orderId));
+    }
+
+    private void evictOrderCache(OrderHeader orderHeader){
+        evictOrderCache(orderHeader.getId(), orderHeader.getEmail(), orderHeader.isArchived());
+    }
+
+    private void evictOrderCache(String orderId, String email, boolean archived){
+        if (archived) {
+            Objects.requireNonNull(cacheManager.getCache("archived")).evict(orderId+email);
+            Objects.requireNonNull(cacheManager.getCache("archived")).evict(email);
         } else {
-            throw new ResourceNotFoundException("Order not found with ID: " + orderId);
+            Objects.requireNonNull(cacheManager.getCache("unarchived")).evict(orderId+email);
+            Objects.requireNonNull(cacheManager.getCache("unarchived")).evict(email);
         }
     }
 
     public void recoverStock(String orderId){
-        OrderDTO orderDTO = new OrderDTO(orderRepository.findById(orderId));
+        OrderDTO orderDTO = new OrderDTO(orderRepository.findOrderProductsById(orderId));
         if(orderDTO.order() != null && !orderDTO.order().isEmpty()) {
             orderEventProducer.recoveredStock(orderDTO);
         }
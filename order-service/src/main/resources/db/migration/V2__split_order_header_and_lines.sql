@@ -0,0 +1,32 @@
+CREATE TABLE t_order_header (
+    id varchar(255) NOT NULL,
+    email varchar(255) NOT NULL,
+    is_archived bool NOT NULL,
+    status int NOT NULL,
+    order_date DATETIME(3) NOT NULL,
+    execution_date DATETIME(3),
+    PRIMARY KEY (id),
+    INDEX idx_order_header_email_archived_date (email, is_archived, order_date)
+);
+
+CREATE TABLE t_order_line (
+    order_id varchar(255) NOT NULL,
+    product_id varchar(255) NOT NULL,
+    product_name varchar(255) NOT NULL,
+    amount int NOT NULL,
+    price decimal(10, 2),
+    PRIMARY KEY (order_id, product_id),
+    CONSTRAINT fk_order_line_header FOREIGN KEY (order_id) REFERENCES t_order_header (id) ON DELETE CASCADE
+);
+
+-- order level fields were written to every line of an order, any line holds them
+INSERT INTO t_order_header (id, email, is_archived, status, order_date, execution_date)
+SELECT id, MIN(email), MAX(is_Archived), MIN(status), MIN(order_date), MAX(execution_date)
+FROM t_order
+GROUP BY id;
+
+INSERT INTO t_order_line (order_id, product_id, product_name, amount, price)
+SELECT id, product_id, product_name, amount, price
+FROM t_order;
+
+DROP TABLE t_order;
@@ -0,0 +1,3 @@
+-- both end with the primary key, so they serve the admin listing's (order_date, id) keyset order
+CREATE INDEX idx_order_header_date ON t_order_header (order_date);
+CREATE INDEX idx_order_header_status_date ON t_order_header (status, order_date);
@@ -2,28 +2,42 @@ package com.ms.order_service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
 import com.ms.order_service.dto.*;
-import com.ms.order_service.model.OrderProduct;
+import com.ms.order_service.model.OrderHeader;
+import com.ms.order_service.model.OrderLine;
 import com.ms.order_service.model.OrderStatus;
+import com.ms.order_service.repository.OrderLineRepository;
 import com.ms.order_service.repository.OrderRepository;
 import com.ms.order_service.service.OrderCacheService;
+import com.ms.order_service.service.OrderListingService;
+import com.ms.order_service.service.OrderProjectionService;
 import com.redis.testcontainers.RedisContainer;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.test.utils.KafkaTestUtils;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.testcontainers.containers.MySQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -32,7 +46,11 @@ import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.sql.Timestamp;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -41,6 +59,7 @@ import static org.testcontainers.shaded.org.awaitility.Awaitility.await;
 @Import(TestcontainersConfiguration.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @Testcontainers
+@Slf4j
 class OrderServiceApplicationTests {
 
 	@Container
@@ -74,6 +93,7 @@ class OrderServiceApplicationTests {
 	String rejectedOrderTopic = "rejected-order";
 	String succeededPaymentTopic = "succeeded-payment";
 	String failedPaymentTopic = "failed-payment";
+	String expiredHoldTopic = "expired-hold";
 
 	@DynamicPropertySource
 	static void setTestProperties(DynamicPropertyRegistry registry) {
@@ -87,6 +107,7 @@ class OrderServiceApplicationTests {
 		registry.add("spring.kafka.bootstrap-servers", kafkaContainer::getBootstrapServers);
 		registry.add("spring.data.redis.port", redisContainer::getRedisPort);
 		registry.add("spring.data.redis.url", redisContainer::getRedisURI);
+		registry.add("spring.jpa.properties.hibernate.generate_statistics", () -> true);
 	}
 
 	@Autowired
@@ -95,9 +116,30 @@ class OrderServiceApplicationTests {
 	@Autowired
 	OrderCacheService orderCacheService;
 
+	@Autowired
+	OrderListingService orderListingService;
+
+	@Autowired
+	OrderProjectionService orderProjectionService;
+
+	@Autowired
+	StringRedisTemplate stringRedisTemplate;
+
 	@Autowired
 	OrderRepository orderRepository;
 
+	@Autowired
+	OrderLineRepository orderLineRepository;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	TransactionTemplate transactionTemplate;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
 	@Autowired
 	ObjectMapper objectMapper;
 
@@ -106,6 +148,9 @@ class OrderServiceApplicationTests {
 
 	String baseUrl;
 
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
 	@BeforeAll
 	static void beforeAll(){
 		props = new Properties();
@@ -123,10 +168,14 @@ class OrderServiceApplicationTests {
 	void setUp() {
 		baseUrl = "http://localhost:" + port + "/api/order";
 
-		orderRepository.save(new OrderProduct("1", "jhon", "200", "apple", 10, OrderStatus.PROCESSING, null, false, null, null));
-		orderRepository.save(new OrderProduct("1", "jhon", "300", "phone", 1, OrderStatus.PROCESSING, null, false, null, null));
-		orderRepository.save(new OrderProduct("2", "fred", "200", "apple", 2, OrderStatus.PROCESSING, null, false, null, null));
-		orderRepository.save(new OrderProduct("3", "greg", "100", "table", 1, OrderStatus.SUCCESSFUL, BigDecimal.valueOf(50), false, null, null));
+		orderRepository.save(new OrderHeader("1", "jhon", OrderStatus.PROCESSING, false, null, null));
+		orderRepository.save(new OrderHeader("2", "fred", OrderStatus.PROCESSING, false, null, null));
+		orderRepository.save(new OrderHeader("3", "greg", OrderStatus.SUCCESSFUL, false, null, null));
+		orderLineRepository.save(new OrderLine("1", "200", "apple", 10, null));
+		orderLineRepository.save(new OrderLine("1", "300", "phone", 1, null));
+		orderLineRepository.save(new OrderLine("2", "200", "apple", 2, null));
+		orderLineRepository.save(new OrderLine("3", "100", "table", 1, BigDecimal.valueOf(50)));
+		orderProjectionService.rebuild("ADMIN");
 	}
 
 	@AfterEach
@@ -255,6 +304,22 @@ class OrderServiceApplicationTests {
 					});
 	}
 
+	@Test
+	void shouldFailOrderWhenStockHoldExpires() {
+		kafkaTemplate.send(expiredHoldTopic, "2", "2");
+		kafkaTemplate.send(expiredHoldTopic, "3", "3");
+
+		await().pollInterval(Duration.ofSeconds(2))
+				.atMost(Duration.ofSeconds(20))
+				.untilAsserted(() -> {
+					OrderDTO expiredOrder = orderCacheService.getUnarchivedOrderByOrderIdAndEmail("2", "fred");
+					assertThat(expiredOrder.order().getFirst().getStatus()).isEqualTo(OrderStatus.FAILED);
+				});
+		// a paid order keeps its status
+		OrderDTO paidOrder = orderCacheService.getUnarchivedOrderByOrderIdAndEmail("3", "greg");
+		assertThat(paidOrder.order().getFirst().getStatus()).isEqualTo(OrderStatus.SUCCESSFUL);
+	}
+
 	@Test
 	void shouldRequestCreatingOrder(){
 		String email = "nick";
@@ -340,6 +405,25 @@ class OrderServiceApplicationTests {
 		assertThat(archived.isEmpty()).isTrue();
 	}
 
+	@Test
+	void shouldNotArchiveProcessingOrder(){
+		String email = "fred";
+		String orderId = "2";
+
+		HttpEntity<String> request = createHttpEntity(email, null);
+		ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/" + orderId + "/archive", HttpMethod.PUT, request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		// another user's order is not found
+		request = createHttpEntity("greg", null);
+		response = restTemplate.exchange(baseUrl + "/" + orderId + "/archive", HttpMethod.PUT, request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+		List<OrderDTO> unarchived = orderCacheService.getUnarchivedOrdersByEmail(email);
+		assertThat(unarchived.size()).isEqualTo(1);
+		assertThat(unarchived.getFirst().order().getFirst().isArchived()).isFalse();
+	}
+
 	@Test
 	void shouldDeleteOrder(){
 		String role = "ADMIN";
@@ -352,7 +436,7 @@ class OrderServiceApplicationTests {
 		assertThat(response.getBody()).isEqualTo("Order deleted !");
 
 		// check if it was removed from database
-		List<OrderDTO> orders = orderCacheService.getOrders(role);
+		List<OrderDTO> orders = orderListingService.getOrders(orderListingService.filterOf(role, null, null, null, null, 20)).orders();
 		assertThat(orders).isNotNull();
 		assertThat(orders.size()).isEqualTo(2);
 		boolean exists = orders.stream().anyMatch(orderDTO -> orderDTO.order().getFirst().getId().equals(orderId));
@@ -391,17 +475,294 @@ class OrderServiceApplicationTests {
 		assertThat(singleResponse.getBody()).isNotNull();
 	}
 
+	@Test
+	void shouldPatchOrderProjection(){
+		// archiving is patched before the request returns
+		ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/3/archive", HttpMethod.PUT, createHttpEntity("greg", null), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		ResponseEntity<OrderDTO[]> archived = restTemplate.exchange(baseUrl + "/me/archived", HttpMethod.GET, createHttpEntity("greg", null), OrderDTO[].class);
+		assertResponseBodyLength(archived, 1);
+		ResponseEntity<OrderDTO[]> unarchived = restTemplate.exchange(baseUrl + "/me", HttpMethod.GET, createHttpEntity("greg", null), OrderDTO[].class);
+		assertResponseBodyLength(unarchived, 0);
+
+		kafkaTemplate.send(rejectedOrderTopic, parseObjectToJson(new RejectOrderDTO("2")));
+		await().pollInterval(Duration.ofSeconds(1))
+				.atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> {
+					ResponseEntity<OrderDTO> rejected = restTemplate.exchange(baseUrl + "/me/2", HttpMethod.GET, createHttpEntity("fred", null), OrderDTO.class);
+					assertThat(rejected.getBody()).isNotNull();
+					assertThat(rejected.getBody().order().getFirst().getStatus()).isEqualTo(OrderStatus.FAILED);
+					assertThat(rejected.getBody().order().getFirst().getExecution_date()).isNotNull();
+				});
+
+		// placed orders show up with their lines in product order
+		CartDTO cart = new CartDTO(List.of(new CartProductDTO("nick", "300", "phone", 1), new CartProductDTO("nick", "200", "apple", 2)));
+		kafkaTemplate.send(loadedOrderTopic, parseObjectToJson(cart));
+		await().pollInterval(Duration.ofSeconds(1))
+				.atMost(Duration.ofSeconds(20))
+				.untilAsserted(() -> {
+					ResponseEntity<OrderDTO[]> placed = restTemplate.exchange(baseUrl + "/me", HttpMethod.GET, createHttpEntity("nick", null), OrderDTO[].class);
+					assertResponseBodyLength(placed, 1);
+					OrderDTO order = Objects.requireNonNull(placed.getBody())[0];
+					assertThat(order.order().size()).isEqualTo(2);
+					assertThat(order.order().getFirst().getProductId()).isEqualTo("200");
+					assertThat(order.order().getFirst().getStatus()).isEqualTo(OrderStatus.PROCESSING);
+					assertThat(order.order().getFirst().getOrder_date()).isNotNull();
+
+					ConsumerRecord<String, String> checkRecord = KafkaTestUtils.getSingleRecord(consumer, checkOrderTopic);
+					assertThat(checkRecord).isNotNull();
+				});
+	}
+
+	@Test
+	void shouldRebuildOrderProjection(){
+		stringRedisTemplate.delete("order-projection::fred");
+		stringRedisTemplate.opsForHash().put("order-projection::gone", "9:status", "FAILED");
+
+		ResponseEntity<String> unauthorized = restTemplate.exchange(baseUrl + "/projection/rebuild", HttpMethod.POST, createHttpEntity("fred", null), String.class);
+		assertThat(unauthorized.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/projection/rebuild", HttpMethod.POST, createHttpEntity(null, "ADMIN"), String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isEqualTo("Order projection rebuilt for 3 users !");
+
+		ResponseEntity<OrderDTO[]> orders = restTemplate.exchange(baseUrl + "/me", HttpMethod.GET, createHttpEntity("fred", null), OrderDTO[].class);
+		assertResponseBodyLength(orders, 1);
+		assertThat(stringRedisTemplate.hasKey("order-projection::gone")).isFalse();
+
+		// the projection matches what the database returns
+		OrderDTO fromProjection = orderProjectionService.getOrderByOrderIdAndEmail("1", "jhon", false);
+		OrderDTO fromDatabase = orderCacheService.getUnarchivedOrderByOrderIdAndEmail("1", "jhon");
+		assertThat(parseObjectToJson(fromProjection)).isEqualTo(parseObjectToJson(fromDatabase));
+	}
+
+	@Test
+	void shouldBuildMissingOrderProjectionOnRead(){
+		stringRedisTemplate.delete("order-projection::fred");
+
+		ResponseEntity<OrderDTO[]> orders = restTemplate.exchange(baseUrl + "/me", HttpMethod.GET, createHttpEntity("fred", null), OrderDTO[].class);
+		assertResponseBodyLength(orders, 1);
+		assertThat(stringRedisTemplate.opsForHash().hasKey("order-projection::fred", "built")).isTrue();
+
+		// users without orders are built once, as an empty hash
+		ResponseEntity<OrderDTO[]> none = restTemplate.exchange(baseUrl + "/me", HttpMethod.GET, createHttpEntity("nobody", null), OrderDTO[].class);
+		assertResponseBodyLength(none, 0);
+		assertThat(stringRedisTemplate.opsForHash().hasKey("order-projection::nobody", "built")).isTrue();
+	}
+
+	@Test
+	void shouldKeepPatchesLandingDuringRebuild(){
+		// a build is running, so the patch is logged, and the database the next rebuild reads never saw it
+		stringRedisTemplate.opsForValue().increment("order-projection-builds");
+		orderProjectionService.statusChanged("2", "fred", OrderStatus.SUCCESSFUL, new Timestamp(System.currentTimeMillis()));
+		orderProjectionService.rebuild("ADMIN");
+		stringRedisTemplate.delete(List.of("order-projection-builds", "order-projection-patched::fred"));
+
+		OrderDTO order = orderProjectionService.getOrderByOrderIdAndEmail("2", "fred", false);
+		assertThat(order.order().getFirst().getStatus()).isEqualTo(OrderStatus.SUCCESSFUL);
+	}
+
 	@Test
 	void shouldFetchAllOrders(){
 		String role = "ADMIN";
 
 		HttpEntity<String> request = createHttpEntity(null, role);
-		ResponseEntity<OrderDTO[]> response = restTemplate.exchange(baseUrl, HttpMethod.GET, request, OrderDTO[].class);
+		ResponseEntity<OrderPage> response = restTemplate.exchange(baseUrl, HttpMethod.GET, request, OrderPage.class);
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
 		assertThat(response.getBody()).isNotNull();
 		if(response.getBody() != null) {
-			assertThat(response.getBody().length).isEqualTo(3);
+			assertThat(response.getBody().orders().size()).isEqualTo(3);
+			assertThat(response.getBody().nextCursor()).isNull();
+		}
+
+		// not an admin
+		ResponseEntity<String> unauthorized = restTemplate.exchange(baseUrl, HttpMethod.GET, createHttpEntity("fred", null), String.class);
+		assertThat(unauthorized.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+	}
+
+	@Test
+	void shouldPageOrdersByDateAndFilterByStatus(){
+		HttpEntity<String> request = createHttpEntity(null, "ADMIN");
+
+		ResponseEntity<OrderPage> firstPage = restTemplate.exchange(baseUrl + "?size=2", HttpMethod.GET, request, OrderPage.class);
+		assertThat(firstPage.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(firstPage.getBody()).isNotNull();
+		assertThat(firstPage.getBody().orders().size()).isEqualTo(2);
+		assertThat(firstPage.getBody().nextCursor()).isNotNull();
+		// the lines of an order stay together
+		assertThat(firstPage.getBody().orders().getFirst().order().size()).isEqualTo(2);
+
+		ResponseEntity<OrderPage> secondPage = restTemplate.exchange(baseUrl + "?size=2&after=" + firstPage.getBody().nextCursor(), HttpMethod.GET, request, OrderPage.class);
+		assertThat(secondPage.getBody()).isNotNull();
+		assertThat(secondPage.getBody().orders().size()).isEqualTo(1);
+		assertThat(secondPage.getBody().orders().getFirst().order().getFirst().getId()).isEqualTo("3");
+		assertThat(secondPage.getBody().nextCursor()).isNull();
+
+		ResponseEntity<OrderPage> successful = restTemplate.exchange(baseUrl + "?status=successful", HttpMethod.GET, request, OrderPage.class);
+		assertThat(successful.getBody()).isNotNull();
+		assertThat(successful.getBody().orders().size()).isEqualTo(1);
+		assertThat(successful.getBody().orders().getFirst().order().getFirst().getStatus()).isEqualTo(OrderStatus.SUCCESSFUL);
+
+		ResponseEntity<OrderPage> future = restTemplate.exchange(baseUrl + "?from=" + Instant.now().plus(Duration.ofDays(1)), HttpMethod.GET, request, OrderPage.class);
+		assertThat(future.getBody()).isNotNull();
+		assertThat(future.getBody().orders().isEmpty()).isTrue();
+
+		ResponseEntity<String> badCursor = restTemplate.exchange(baseUrl + "?after=nope", HttpMethod.GET, request, String.class);
+		assertThat(badCursor.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void shouldExportOrders(){
+		HttpEntity<String> request = createHttpEntity(null, "ADMIN");
+
+		ResponseEntity<String> response = restTemplate.exchange(baseUrl + "/export", HttpMethod.GET, request, String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isNotNull();
+		String[] lines = response.getBody().trim().split("\n");
+		assertThat(lines.length).isEqualTo(3);
+		assertThat(lines[0]).contains("\"id\":\"1\"", "\"productId\":\"200\"", "\"productId\":\"300\"");
+
+		response = restTemplate.exchange(baseUrl + "/export?status=PROCESSING", HttpMethod.GET, request, String.class);
+		assertThat(response.getBody()).isNotNull();
+		assertThat(response.getBody().trim().split("\n").length).isEqualTo(2);
+	}
+
+	@Test
+	void shouldInsertOrderLinesAsOneBatch(){
+		String orderId = "batched-" + UUID.randomUUID();
+		List<OrderLine> orderLines = new ArrayList<>();
+		for(int i = 0; i < 50; i++) {
+			orderLines.add(new OrderLine(orderId, "product-" + i, "product " + i, 1, null));
 		}
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		transactionTemplate.executeWithoutResult(status ->
+				orderRepository.insertOrder(new OrderHeader(orderId, "batched-user", OrderStatus.PROCESSING, false, null, null), orderLines));
+
+		// persisting never selects, and the lines share one prepared statement where row by row would prepare 51
+		assertThat(statistics.getEntityInsertCount()).isEqualTo(51L);
+		assertThat(statistics.getEntityLoadCount()).isEqualTo(0L);
+		assertThat(statistics.getPrepareStatementCount()).isLessThan(5L);
+	}
+
+	// cursor fetch switches the driver to server prepared statements, the lines must still reach the server as one INSERT
+	@Test
+	void shouldRewriteBatchedLinesWithCursorFetch(){
+		String orderId = "batched-" + UUID.randomUUID();
+		List<OrderLine> orderLines = new ArrayList<>();
+		for(int i = 0; i < 50; i++) {
+			orderLines.add(new OrderLine(orderId, "product-" + i, "product " + i, 1, null));
+		}
+
+		long insertsBefore = serverInserts();
+		transactionTemplate.executeWithoutResult(status ->
+				orderRepository.insertOrder(new OrderHeader(orderId, "batched-user", OrderStatus.PROCESSING, false, null, null), orderLines));
+		long inserts = serverInserts() - insertsBefore;
+
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_order_line WHERE order_id = ?", Long.class, orderId)).isEqualTo(50L);
+		// one INSERT for the header and one for the lines, with some room for writes of background listeners
+		assertThat(inserts).isLessThan(10L);
+	}
+
+	private long serverInserts() {
+		return jdbcTemplate.queryForObject("SHOW GLOBAL STATUS LIKE 'Com_insert'", (rs, rowNum) -> rs.getLong("Value"));
+	}
+
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/me")).header("X-USER-EMAIL", "fred").build();
+
+		new ConcurrentRequestBenchmark(10_000, 50_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
+	// run with -Dbenchmark=true, takes several minutes to load
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkOwnOrdersAtTenMillionLines() {
+		int orders = 1_000_000;
+		int users = 50_000;
+		int lookups = 1_000;
+		String digits = "(SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4 " +
+				"UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9)";
+
+		try {
+			long start = System.nanoTime();
+			jdbcTemplate.update("INSERT INTO t_order_header (id, email, is_archived, status, order_date) " +
+					"SELECT CONCAT('bench-', n), CONCAT('bench-user-', n % " + users + "), n % 3 = 0, 1, NOW(3) - INTERVAL n SECOND " +
+					"FROM (SELECT a.d + 10 * b.d + 100 * c.d + 1000 * e.d + 10000 * f.d + 100000 * g.d n " +
+					"FROM " + digits + " a, " + digits + " b, " + digits + " c, " + digits + " e, " + digits + " f, " + digits + " g) seq");
+			// ten lines per order, one product at a time
+			for(int product = 0; product < 10; product++) {
+				jdbcTemplate.update("INSERT INTO t_order_line (order_id, product_id, product_name, amount, price) " +
+						"SELECT id, ?, ?, ?, 9.99 FROM t_order_header WHERE id LIKE 'bench-%'", "product-" + product, "product " + product, product + 1);
+			}
+			Long lines = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM t_order_line WHERE order_id LIKE 'bench-%'", Long.class);
+			assertThat(lines).isEqualTo(orders * 10L);
+			log.info("loaded {} order lines in {}s", lines, Math.round((System.nanoTime() - start) / 1e9));
+
+			Map<String, Object> plan = jdbcTemplate.queryForList("EXPLAIN SELECT h.id FROM t_order_header h JOIN t_order_line l ON l.order_id = h.id " +
+					"WHERE h.email = ? AND h.is_archived = false ORDER BY h.order_date, h.id", "bench-user-1").getFirst();
+			assertThat(plan.get("key")).isEqualTo("idx_order_header_email_archived_date");
+			assertThat(String.valueOf(plan.get("Extra"))).doesNotContain("filesort");
+
+			Random random = new Random(42);
+			long[] latencies = new long[lookups];
+			for(int i = 0; i < lookups; i++) {
+				String email = "bench-user-" + random.nextInt(users);
+				long sent = System.nanoTime();
+				orderRepository.findByEmailAndIsArchivedIsFalse(email);
+				latencies[i] = System.nanoTime() - sent;
+			}
+
+			Arrays.sort(latencies);
+			log.info("own orders by email at {} lines: plan={} p50={}ms p99={}ms", lines, plan.get("key"),
+					String.format("%.2f", latencies[lookups / 2] / 1e6), String.format("%.2f", latencies[(int) (lookups * 0.99)] / 1e6));
+		} finally {
+			jdbcTemplate.update("DELETE FROM t_order_line WHERE order_id LIKE 'bench-%'");
+			jdbcTemplate.update("DELETE FROM t_order_header WHERE id LIKE 'bench-%'");
+		}
+	}
+
+	// run with -Dbenchmark=true, compares saving an order row by row with the batched insert
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkOrderPlacement() {
+		int orders = 2_000;
+		int lines = 50;
+
+		for(boolean batched : new boolean[]{false, true}) {
+			for(int i = 0; i < 200; i++) {
+				insertBenchmarkOrder(batched, lines);
+			}
+			long start = System.nanoTime();
+			for(int i = 0; i < orders; i++) {
+				insertBenchmarkOrder(batched, lines);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			log.info("batched={} lines={} orders/s={}", batched, lines, Math.round(orders / seconds));
+			jdbcTemplate.update("DELETE FROM t_order_header WHERE id LIKE 'bench-%'");
+		}
+	}
+
+	private void insertBenchmarkOrder(boolean batched, int lines) {
+		String orderId = "bench-" + UUID.randomUUID();
+		OrderHeader orderHeader = new OrderHeader(orderId, "bench-user", OrderStatus.PROCESSING, false, null, null);
+		List<OrderLine> orderLines = new ArrayList<>();
+		for(int i = 0; i < lines; i++) {
+			orderLines.add(new OrderLine(orderId, "product-" + i, "product " + i, 1, null));
+		}
+
+		transactionTemplate.executeWithoutResult(status -> {
+			if(batched) {
+				orderRepository.insertOrder(orderHeader, orderLines);
+			} else {
+				orderRepository.save(orderHeader);
+				orderLines.forEach(orderLineRepository::save);
+			}
+		});
 	}
 
 	private HttpEntity<String> createHttpEntity(String emailHeader, String roleHeader){
@@ -37,4 +37,9 @@ public class StripeEventConsumer {
     public void receiveCancelRequest(ConsumerRecord<String, String> record) throws StripeException {
         stripeService.cancelPayment(record.value());
     }
+
+    @KafkaListener(topics = "expired-hold", groupId = "stripe")
+    public void receiveHoldExpiry(ConsumerRecord<String, String> record) throws StripeException {
+        stripeService.expirePayment(record.value());
+    }
 }
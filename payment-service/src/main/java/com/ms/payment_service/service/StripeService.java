@@ -97,4 +97,21 @@ public class StripeService {
         eventProducer.paymentCanceled(new PaymentStatusChangedDTO(paymentRequest.getEmail(), orderId));
     }
 
+    // the stock held for the order went back, so its session must not be payable anymore; order-service fails the order itself
+    public void expirePayment(String orderId) throws StripeException {
+        PaymentRequest paymentRequest = paymentRequestService.getPaymentRequestById(orderId);
+        if(paymentRequest == null || !paymentRequest.getStatus().equals(Status.CREATED)) {
+            return;
+        }
+        Stripe.apiKey = stripeSecretKey;
+        Session session = Session.retrieve(paymentRequest.getSessionId());
+        if("complete".equals(session.getStatus())) {
+            return;
+        }
+        if("open".equals(session.getStatus())) {
+            session.expire();
+        }
+        paymentRequestService.setStatus(orderId, Status.FAILED);
+    }
+
 }
@@ -2,6 +2,7 @@ package com.ms.payment_service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
 import com.ms.payment_service.dto.OrderDTO;
 import com.ms.payment_service.dto.OrderProduct;
 import com.ms.payment_service.dto.PaymentCreatedDTO;
@@ -19,7 +20,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -37,6 +40,8 @@ import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.util.List;
 import java.util.Properties;
@@ -77,6 +82,12 @@ class PaymentServiceApplicationTests {
 	@Autowired
 	PaymentRequestService paymentRequestService;
 
+	@LocalServerPort
+	int port;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
 	static Properties props;
 
 	@Autowired
@@ -152,6 +163,15 @@ class PaymentServiceApplicationTests {
 				});
 	}
 
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/payment/success")).build();
+
+		new ConcurrentRequestBenchmark(10_000, 50_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
 	private <T> String parseObjectToJson(T order) {
 		try {
 			return objectMapper.writeValueAsString(order);
@@ -0,0 +1,115 @@
+package com.ms.product_service.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking reads of the caches of a {@link TwoLevelCacheManager}. Entries are looked up in process memory, then
+ * in Redis, and loaded on a miss. Loaded values are written in the format and with the time to live of the blocking
+ * cache of the same name, so both read paths share their entries and the writers' evictions. Unlike the blocking
+ * caches, concurrent loads of the same key are not coalesced.
+ */
+public class ReactiveTwoLevelCache {
+
+    private final TwoLevelCacheManager cacheManager;
+    private final ReactiveRedisTemplate<String, byte[]> redisTemplate;
+
+    public ReactiveTwoLevelCache(TwoLevelCacheManager cacheManager, ReactiveRedisTemplate<String, byte[]> redisTemplate) {
+        this.cacheManager = cacheManager;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Returns the cached value of the key, loading and caching it when absent. Empty when the loader finds nothing,
+     * which is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> get(String cacheName, Object key, Supplier<Mono<T>> loader) {
+        TwoLevelCache cache = cacheManager.getCache(cacheName);
+        Cache.ValueWrapper local = cache.getLocal(key);
+        if (local != null) {
+            return Mono.justOrEmpty((T) local.get());
+        }
+
+        RedisCacheConfiguration configuration = configurationOf(cacheName);
+        String redisKey = configuration.getKeyPrefixFor(cacheName) + key;
+        return redisTemplate.opsForValue().get(redisKey)
+                .map(bytes -> {
+                    Object value = read(configuration, bytes);
+                    cache.putLocal(key, value == NullValue.INSTANCE ? null : value);
+                    return Optional.ofNullable(value == NullValue.INSTANCE ? null : (T) value);
+                })
+                .switchIfEmpty(Mono.defer(() -> loader.get()
+                        .flatMap(value -> put(cacheName, key, value).thenReturn(Optional.of(value)))))
+                .flatMap(value -> Mono.justOrEmpty(value));
+    }
+
+    /**
+     * Returns the cached values of the given keys, reading the keys missing locally from Redis with one MGET.
+     * Keys without an entry in either tier are left out of the result.
+     */
+    public Mono<Map<Object, Object>> getAll(String cacheName, List<?> keys) {
+        TwoLevelCache cache = cacheManager.getCache(cacheName);
+        Map<Object, Object> found = new HashMap<>();
+        List<Object> missing = new ArrayList<>();
+        for (Object key : new LinkedHashSet<>(keys)) {
+            Cache.ValueWrapper local = cache.getLocal(key);
+            if (local == null) {
+                missing.add(key);
+            } else if (local.get() != null) {
+                found.put(key, local.get());
+            }
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(found);
+        }
+
+        RedisCacheConfiguration configuration = configurationOf(cacheName);
+        List<String> redisKeys = missing.stream().map(key -> configuration.getKeyPrefixFor(cacheName) + key).toList();
+        return redisTemplate.opsForValue().multiGet(redisKeys).map(values -> {
+            for (int i = 0; i < values.size(); i++) {
+                byte[] bytes = values.get(i);
+                if (bytes == null) {
+                    continue;
+                }
+                Object value = read(configuration, bytes);
+                cache.putLocal(missing.get(i), value == NullValue.INSTANCE ? null : value);
+                if (value != NullValue.INSTANCE) {
+                    found.put(missing.get(i), value);
+                }
+            }
+            return found;
+        });
+    }
+
+    public Mono<Boolean> put(String cacheName, Object key, Object value) {
+        RedisCacheConfiguration configuration = configurationOf(cacheName);
+        String redisKey = configuration.getKeyPrefixFor(cacheName) + key;
+        ByteBuffer buffer = configuration.getValueSerializationPair().write(value);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+
+        Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+        Mono<Boolean> write = ttl.isZero() || ttl.isNegative()
+                ? redisTemplate.opsForValue().set(redisKey, bytes)
+                : redisTemplate.opsForValue().set(redisKey, bytes, ttl);
+        return write.doOnSuccess(written -> cacheManager.getCache(cacheName).putLocal(key, value));
+    }
+
+    private RedisCacheConfiguration configurationOf(String cacheName) {
+        return ((RedisCache) Objects.requireNonNull(cacheManager.getRemote().getCache(cacheName))).getCacheConfiguration();
+    }
+
+    private static Object read(RedisCacheConfiguration configuration, byte[] bytes) {
+        return configuration.getValueSerializationPair().read(ByteBuffer.wrap(bytes));
+    }
+}
@@ -0,0 +1,60 @@
+package com.ms.product_service.cache;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads several entries of a Redis cache with a single MGET, using the key prefix and value serializer of the
+ * cache's own configuration so that it sees the same entries as {@link RedisCache}.
+ */
+public class RedisMultiGet {
+
+    private final RedisConnectionFactory connectionFactory;
+    private final RedisCacheManager cacheManager;
+
+    public RedisMultiGet(RedisConnectionFactory connectionFactory, RedisCacheManager cacheManager) {
+        this.connectionFactory = connectionFactory;
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Returns the values found for the given keys, cached nulls included as {@link NullValue}.
+     */
+    public Map<Object, Object> get(String cacheName, List<?> keys) {
+        RedisCacheConfiguration cacheConfiguration = ((RedisCache) cacheManager.getCache(cacheName)).getCacheConfiguration();
+        byte[][] redisKeys = new byte[keys.size()][];
+        String prefix = cacheConfiguration.getKeyPrefixFor(cacheName);
+        for (int i = 0; i < keys.size(); i++) {
+            redisKeys[i] = toBytes(cacheConfiguration.getKeySerializationPair().write(prefix + keys.get(i)));
+        }
+
+        List<byte[]> values;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            values = connection.stringCommands().mGet(redisKeys);
+        }
+
+        Map<Object, Object> found = new HashMap<>();
+        for (int i = 0; values != null && i < values.size(); i++) {
+            byte[] value = values.get(i);
+            if (value != null) {
+                found.put(keys.get(i), cacheConfiguration.getValueSerializationPair().read(ByteBuffer.wrap(value)));
+            }
+        }
+        return found;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,270 @@
+package com.ms.product_service.cache;
+
+import com.ms.commons.cache.RefreshAheadRedisCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps recently read entries of a Redis cache in process memory. Writes and evictions go to
+ * both tiers, reads only reach Redis when the entry is not held locally.
+ * <p>
+ * Loads through {@link #get(Object, Callable)} are coalesced: one caller per key runs the loader
+ * while the others wait on its result. With a {@link RedisLoadLock} the same holds across replicas,
+ * and with a stale store the previous value of an evicted key is served while it is reloaded. Redis
+ * entries close to their expiry are refreshed ahead of it when the remote cache is set up to.
+ */
+public class TwoLevelCache implements Cache {
+
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> stale;
+    private final Cache remote;
+    private final RedisLoadLock loadLock;
+    private final RedisMultiGet multiGet;
+    private final Executor reloadExecutor;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    public TwoLevelCache(com.github.benmanes.caffeine.cache.Cache<Object, Object> local, com.github.benmanes.caffeine.cache.Cache<Object, Object> stale,
+                         Cache remote, RedisLoadLock loadLock, RedisMultiGet multiGet, Executor reloadExecutor) {
+        this.local = local;
+        this.stale = stale;
+        this.remote = remote;
+        this.loadLock = loadLock;
+        this.multiGet = multiGet;
+        this.reloadExecutor = reloadExecutor;
+    }
+
+    @Override
+    public String getName() {
+        return remote.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return new SimpleValueWrapper(fromStoreValue(value));
+        }
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null) {
+            local.put(key, toStoreValue(wrapper.get()));
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            return (T) fromStoreValue(value);
+        }
+
+        Object staleValue = stale != null ? stale.getIfPresent(key) : null;
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> running = loading.putIfAbsent(key, load);
+
+        if (running == null) {
+            if (staleValue != null) {
+                reloadExecutor.execute(() -> load(key, valueLoader, load));
+                return (T) fromStoreValue(staleValue);
+            }
+            load(key, valueLoader, load);
+            return (T) await(key, valueLoader, load);
+        }
+        if (staleValue != null) {
+            return (T) fromStoreValue(staleValue);
+        }
+        return (T) await(key, valueLoader, running);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        local.put(key, toStoreValue(value));
+        if (stale != null) {
+            stale.invalidate(key);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        local.put(key, toStoreValue(existing != null ? existing.get() : value));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        // the value was evicted because this process changed it, serving it stale would hide the change
+        if (stale != null) {
+            stale.invalidate(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        if (stale != null) {
+            stale.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the cached values of the given keys, reading the keys missing locally from Redis in one round trip.
+     * Keys without an entry in either tier are left out of the result.
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> found = new HashMap<>();
+        local.getAllPresent(keys).forEach((key, value) -> found.put(key, fromStoreValue(value)));
+        List<Object> missing = keys.stream().filter(key -> !found.containsKey(key)).distinct().collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        if (multiGet != null) {
+            multiGet.get(getName(), missing).forEach((key, value) -> {
+                local.put(key, value);
+                found.put(key, fromStoreValue(value));
+            });
+        } else {
+            for (Object key : missing) {
+                ValueWrapper wrapper = get(key);
+                if (wrapper != null) {
+                    found.put(key, wrapper.get());
+                }
+            }
+        }
+        return found;
+    }
+
+    // reads past the local tier, for comparing against the entry shared with other replicas
+    public ValueWrapper getShared(Object key) {
+        return remote.get(key);
+    }
+
+    // the in-process tier alone, for readers that reach Redis by other means
+    public ValueWrapper getLocal(Object key) {
+        Object value = local.getIfPresent(key);
+        return value != null ? new SimpleValueWrapper(fromStoreValue(value)) : null;
+    }
+
+    public void putLocal(Object key, Object value) {
+        local.put(key, toStoreValue(value));
+    }
+
+    // drops the in-process copy of an entry another replica changed, with a stale store it is served while reloading
+    public void evictLocal(Object key) {
+        Object value = local.getIfPresent(key);
+        if (stale != null && value != null) {
+            stale.put(key, value);
+        }
+        local.invalidate(key);
+    }
+
+    public void clearLocal() {
+        if (stale != null) {
+            stale.putAll(local.asMap());
+        }
+        local.invalidateAll();
+    }
+
+    private void load(Object key, Callable<?> valueLoader, CompletableFuture<Object> load) {
+        try {
+            Object value = loadShared(key, valueLoader);
+            local.put(key, toStoreValue(value));
+            if (stale != null) {
+                stale.invalidate(key);
+            }
+            load.complete(value);
+        } catch (Throwable ex) {
+            load.completeExceptionally(ex);
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private Object loadShared(Object key, Callable<?> valueLoader) throws Exception {
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper != null) {
+            if (remote instanceof RefreshAheadRedisCache refreshAhead) {
+                refreshAhead.refreshIfExpiring(key, valueLoader);
+            }
+            return wrapper.get();
+        }
+        if (loadLock == null) {
+            return loadAndStore(key, valueLoader);
+        }
+
+        String lockKey = getName() + "::" + key;
+        String token = loadLock.tryAcquire(lockKey);
+        if (token != null) {
+            try {
+                return loadAndStore(key, valueLoader);
+            } finally {
+                loadLock.release(lockKey, token);
+            }
+        }
+
+        // another replica is loading, wait for its value until its lease runs out
+        Instant deadline = Instant.now().plus(loadLock.getLease());
+        while (Instant.now().isBefore(deadline)) {
+            Thread.sleep(Duration.ofMillis(20));
+            wrapper = remote.get(key);
+            if (wrapper != null) {
+                return wrapper.get();
+            }
+        }
+        return loadAndStore(key, valueLoader);
+    }
+
+    private Object loadAndStore(Object key, Callable<?> valueLoader) throws Exception {
+        Object value = valueLoader.call();
+        remote.put(key, value);
+        return value;
+    }
+
+    private Object await(Object key, Callable<?> valueLoader, CompletableFuture<Object> load) {
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private Object toStoreValue(Object value) {
+        return value != null ? value : NullValue.INSTANCE;
+    }
+
+    private Object fromStoreValue(Object value) {
+        return value == NullValue.INSTANCE ? null : value;
+    }
+}
@@ -0,0 +1,97 @@
+package com.ms.product_service.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.ToLongFunction;
+
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager remote;
+    private final MeterRegistry meterRegistry;
+    private final ToLongFunction<String> localMaxSize;
+    private final Duration localTtl;
+    private final Duration staleTtl;
+    private final RedisLoadLock loadLock;
+    private final RedisMultiGet multiGet;
+    private final Executor reloadExecutor;
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param localMaxSize the number of entries each cache holds in process memory, by cache name
+     * @param staleTtl how long evicted values may be served while they are reloaded, null to always wait for the reload
+     * @param loadLock lease shared with the other replicas while loading, null to coalesce loads per replica only
+     * @param multiGet batched reads of the remote caches, null to read missing keys one by one
+     */
+    public TwoLevelCacheManager(CacheManager remote, MeterRegistry meterRegistry, ToLongFunction<String> localMaxSize, Duration localTtl,
+                                Duration staleTtl, RedisLoadLock loadLock, RedisMultiGet multiGet, Executor reloadExecutor) {
+        this.remote = remote;
+        this.meterRegistry = meterRegistry;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+        this.staleTtl = staleTtl;
+        this.loadLock = loadLock;
+        this.multiGet = multiGet;
+        this.reloadExecutor = reloadExecutor;
+    }
+
+    @Override
+    public TwoLevelCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    public CacheManager getRemote() {
+        return remote;
+    }
+
+    public void evictLocal(String name, Object key) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            cache.evictLocal(key);
+        }
+    }
+
+    public void clearLocal(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            cache.clearLocal();
+        }
+    }
+
+    private TwoLevelCache createCache(String name) {
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null) {
+            throw new IllegalStateException("No remote cache named " + name);
+        }
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize.applyAsLong(name))
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, name, Tags.of("tier", "local"));
+
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> stale = null;
+        if (staleTtl != null) {
+            stale = Caffeine.newBuilder()
+                    .maximumSize(localMaxSize.applyAsLong(name))
+                    .expireAfterWrite(staleTtl)
+                    .build();
+        }
+        return new TwoLevelCache(local, stale, remoteCache, loadLock, multiGet, reloadExecutor);
+    }
+}
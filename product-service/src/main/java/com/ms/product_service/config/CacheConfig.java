@@ -0,0 +1,95 @@
+package com.ms.product_service.config;
+
+import com.ms.commons.cache.CacheCodecProperties;
+import com.ms.commons.cache.CachePolicyProperties;
+import com.ms.commons.cache.CacheSizeMetrics;
+import com.ms.commons.cache.PolicyRedisCacheManager;
+import com.ms.product_service.cache.ReactiveTwoLevelCache;
+import com.ms.product_service.cache.RedisLoadLock;
+import com.ms.product_service.cache.RedisMultiGet;
+import com.ms.product_service.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+@Configuration
+public class CacheConfig {
+
+    @Value("${product.cache.local.max-size:10000}")
+    private long localMaxSize;
+
+    @Value("${product.cache.local.ttl:30s}")
+    private Duration localTtl;
+
+    @Value("${product.cache.single-flight.distributed:false}")
+    private boolean distributedLoadLock;
+
+    @Value("${product.cache.single-flight.lease:2s}")
+    private Duration loadLockLease;
+
+    @Value("${product.cache.stale-while-revalidate.enabled:false}")
+    private boolean staleWhileRevalidate;
+
+    @Value("${product.cache.stale-while-revalidate.max-age:5m}")
+    private Duration staleMaxAge;
+
+    @Bean
+    @ConfigurationProperties(prefix = "product.cache.codec")
+    public CacheCodecProperties cacheCodecProperties() {
+        return new CacheCodecProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "product.cache.policy")
+    public CachePolicyProperties cachePolicyProperties() {
+        return new CachePolicyProperties();
+    }
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory, StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+                                             CacheCodecProperties codecProperties, CachePolicyProperties policyProperties) {
+        // kept out of the context so that it does not replace the application task executor
+        ExecutorService reloadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        PolicyRedisCacheManager redisCacheManager = new PolicyRedisCacheManager(redisConnectionFactory, RedisCacheConfiguration.defaultCacheConfig(),
+                codecProperties, policyProperties, meterRegistry, reloadExecutor);
+        redisCacheManager.initializeCaches();
+
+        RedisLoadLock loadLock = distributedLoadLock ? new RedisLoadLock(stringRedisTemplate, loadLockLease) : null;
+        Duration staleTtl = staleWhileRevalidate ? staleMaxAge : null;
+        RedisMultiGet multiGet = new RedisMultiGet(redisConnectionFactory, redisCacheManager);
+        ToLongFunction<String> localMaxSizes = cacheName -> {
+            Long maxSize = policyProperties.policy(cacheName).getMaxSize();
+            return maxSize != null ? maxSize : localMaxSize;
+        };
+        return new TwoLevelCacheManager(redisCacheManager, meterRegistry, localMaxSizes, localTtl, staleTtl, loadLock, multiGet, reloadExecutor);
+    }
+
+    @Bean
+    public CacheSizeMetrics cacheSizeMetrics(TwoLevelCacheManager cacheManager, RedisConnectionFactory redisConnectionFactory, MeterRegistry meterRegistry,
+                                             @Value("${product.cache.policy.size-interval-ms:60000}") long sizeInterval) {
+        return new CacheSizeMetrics(cacheManager.getRemote(), redisConnectionFactory, meterRegistry, Duration.ofMillis(sizeInterval));
+    }
+
+    @Bean
+    public ReactiveTwoLevelCache reactiveCache(TwoLevelCacheManager cacheManager, ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        // values are (de)serialized by the cache configurations, the template moves raw bytes
+        RedisSerializationContext<String, byte[]> context = RedisSerializationContext.<String, byte[]>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveTwoLevelCache(cacheManager, new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, context));
+    }
+}
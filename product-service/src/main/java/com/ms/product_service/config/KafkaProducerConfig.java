@@ -1,10 +1,13 @@
 package com.ms.product_service.config;
 
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
@@ -18,6 +21,12 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${product.events.state-topic.partitions:6}")
+    private int productStatePartitions;
+
+    @Value("${product.events.state-topic.tombstone-retention-ms:86400000}")
+    private long productStateTombstoneRetention;
+
     @Bean
     public ProducerFactory<String, String> producerFactory() {
         Map<String, Object> configProps = new HashMap<>();
@@ -31,4 +40,14 @@ public class KafkaProducerConfig {
     public KafkaTemplate<String, String> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
+
+    // latest state of every product keyed by its id, deleted products are left as tombstones until compacted away
+    @Bean
+    public NewTopic productStateTopic() {
+        return TopicBuilder.name("product-state")
+                .partitions(productStatePartitions)
+                .compact()
+                .config(TopicConfig.DELETE_RETENTION_MS_CONFIG, String.valueOf(productStateTombstoneRetention))
+                .build();
+    }
 }
@@ -1,8 +1,19 @@
 package com.ms.product_service.controller;
 
+import com.ms.product_service.dto.CategoryStatsResponse;
+import com.ms.product_service.dto.ProductBatchRequest;
+import com.ms.product_service.dto.ProductBatchResponse;
+import com.ms.product_service.dto.ProductFilterPage;
+import com.ms.product_service.dto.ProductImportReport;
+import com.ms.product_service.dto.ProductPage;
 import com.ms.product_service.dto.ProductRequest;
 import com.ms.product_service.dto.ProductResponse;
-import com.ms.product_service.service.ProductCacheService;
+import com.ms.product_service.search.SuggestionTrie;
+import com.ms.product_service.service.CategoryStatsService;
+import com.ms.product_service.service.ProductImportService;
+import com.ms.product_service.service.ProductReadService;
+import com.ms.product_service.service.ProductSearchService;
+import com.ms.product_service.service.ProductSuggestService;
 import com.ms.product_service.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -11,9 +22,14 @@ import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Description;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -22,54 +38,133 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
-    private final ProductCacheService productCacheService;
+    private final ProductReadService productReadService;
+    private final ProductImportService productImportService;
+    private final ProductSearchService productSearchService;
+    private final ProductSuggestService productSuggestService;
+    private final CategoryStatsService categoryStatsService;
+    private final ProductETags productETags;
 
     @Autowired
-    public ProductController(ProductService productService, ProductCacheService productCacheService) {
+    public ProductController(ProductService productService, ProductReadService productReadService, ProductImportService productImportService, ProductSearchService productSearchService, ProductSuggestService productSuggestService, CategoryStatsService categoryStatsService, ProductETags productETags) {
         this.productService = productService;
-        this.productCacheService = productCacheService;
+        this.productReadService = productReadService;
+        this.productImportService = productImportService;
+        this.productSearchService = productSearchService;
+        this.productSuggestService = productSuggestService;
+        this.categoryStatsService = categoryStatsService;
+        this.productETags = productETags;
     }
 
     @GetMapping
     @Operation(summary = "All Products", description = "Returns all registered products")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<List<ProductResponse>> getProducts() {
-        return new ResponseEntity<>(productCacheService.getProducts(), HttpStatus.OK);
+    public Mono<ResponseEntity<List<ProductResponse>>> getProducts() {
+        return productReadService.getProducts().map(products -> taggedResponse(productETags.of(products), products));
+    }
+
+    @GetMapping("/page")
+    @Operation(summary = "Products Page", description = "Returns a page of products ordered by ID, starting after the given cursor")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<ResponseEntity<ProductPage>> getProductPage(@RequestParam(required = false) String after,
+                                                            @RequestParam(defaultValue = "20") int size,
+                                                            @Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @RequestParam(required = false) String category) {
+        return productReadService.getProductPage(category, after, size).map(page -> taggedResponse(productETags.of(page.products()), page));
+    }
+
+    @GetMapping("/filter")
+    @Operation(summary = "Filter Products", description = "Returns a page of products filtered by category, price range and stock, with the product counts per category and price range")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<ProductFilterPage> filterProducts(@Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @RequestParam(required = false) String category,
+                                                            @RequestParam(required = false) BigDecimal minPrice,
+                                                            @RequestParam(required = false) BigDecimal maxPrice,
+                                                            @RequestParam(defaultValue = "false") boolean inStock,
+                                                            @Parameter(schema = @Schema(allowableValues = {"ID", "PRICE_ASC", "PRICE_DESC"})) @RequestParam(required = false) String sort,
+                                                            @RequestParam(required = false) String after,
+                                                            @RequestParam(defaultValue = "20") int size,
+                                                            WebRequest request) {
+        ProductFilterPage page = productService.filterProducts(category, minPrice, maxPrice, inStock, sort, after, size);
+        return conditionalResponse(request, productETags.of(page.products()), page);
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Search Products", description = "Returns the products whose name or description best match the query, tolerating typos and incomplete words")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<ProductResponse>> searchProducts(@RequestParam String q,
+                                                                @RequestParam(defaultValue = "20") int limit,
+                                                                @Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @RequestParam(required = false) String category) {
+        return new ResponseEntity<>(productSearchService.search(q, category, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/suggest")
+    @Operation(summary = "Suggest Products", description = "Returns the best stocked products with a word of their name starting with the typed text")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<SuggestionTrie.Suggestion>> suggestProducts(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        return new ResponseEntity<>(productSuggestService.suggest(q, limit), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export Products", description = "Streams all products as newline-delimited JSON")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<StreamingResponseBody> exportProducts(@Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @RequestParam(required = false) String category) {
+        StreamingResponseBody body = outputStream -> productService.exportProducts(category, outputStream);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "Product By Id", description = "Returns a specified product by its ID")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<ProductResponse> getProductById(@PathVariable String id) {
-        return new ResponseEntity<>(productCacheService.getProductById(id), HttpStatus.OK);
+    public Mono<ResponseEntity<ProductResponse>> getProductById(@PathVariable String id) {
+        return productReadService.getProductById(id).map(product -> taggedResponse(productETags.of(product), product));
     }
 
     @GetMapping("/category/{category}")
     @Operation(summary = "Products By Category", description = "Returns all products of a specified category")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<List<ProductResponse>> getProductsByCategory(@Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @PathVariable String category) {
-        return new ResponseEntity<>(productCacheService.getProductByCategory(category), HttpStatus.OK);
+    public Mono<ResponseEntity<List<ProductResponse>>> getProductsByCategory(@Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @PathVariable String category) {
+        return productReadService.getProductByCategory(category).map(products -> taggedResponse(productETags.of(products), products));
+    }
+
+    @GetMapping("/category/stats")
+    @Operation(summary = "Category Statistics", description = "Returns the product count, in-stock count, total units and price range of every category")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<CategoryStatsResponse>> getAllCategoryStats() {
+        return new ResponseEntity<>(categoryStatsService.getAllStats(), HttpStatus.OK);
+    }
+
+    @GetMapping("/category/{category}/stats")
+    @Operation(summary = "Category Statistics By Category", description = "Returns the product count, in-stock count, total units and price range of a specified category")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<CategoryStatsResponse> getCategoryStats(@Parameter(schema = @Schema(allowableValues = {"TOOL", "FOOD", "ELECTRONIC", "CLOTHING"})) @PathVariable String category) {
+        return new ResponseEntity<>(categoryStatsService.getStats(category), HttpStatus.OK);
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Products Batch", description = "Returns the name, price, stock and availability of several products in one call, each product checked against its optional required amount")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<ProductBatchResponse> getProductBatch(@RequestBody ProductBatchRequest productBatchRequest) {
+        return new ResponseEntity<>(productService.getProductBatch(productBatchRequest), HttpStatus.OK);
     }
 
     @GetMapping("/{id}/available")
     @Operation(summary = "Product Availability", description = "Returns 'true' if the product is available in the defined amount, 'false' otherwise.")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<Boolean> isAvailable(@PathVariable String id, @RequestParam int amount) {
-        return new ResponseEntity<>(productService.isAvailable(id, amount), HttpStatus.OK);
+    public Mono<ResponseEntity<Boolean>> isAvailable(@PathVariable String id, @RequestParam int amount) {
+        return productReadService.isAvailable(id, amount).map(available -> new ResponseEntity<>(available, HttpStatus.OK));
     }
 
     @GetMapping("/{id}/price")
     @Operation(summary = "Product Price", description = "Returns the product's price specified by ID")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<BigDecimal> getPrice(@PathVariable String id) {
-        return new ResponseEntity<>(productCacheService.getPrice(id), HttpStatus.OK);
+    public Mono<ResponseEntity<BigDecimal>> getPrice(@PathVariable String id) {
+        return productReadService.getPrice(id).map(price -> new ResponseEntity<>(price, HttpStatus.OK));
     }
 
     @GetMapping("/{id}/name")
     @Operation(summary = "Product Name", description = "Returns the product's name specified by ID")
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<String> getProductName(@PathVariable String id) {
-        return new ResponseEntity<>(productCacheService.getName(id), HttpStatus.OK);
+    public Mono<ResponseEntity<String>> getProductName(@PathVariable String id) {
+        return productReadService.getName(id).map(name -> new ResponseEntity<>(name, HttpStatus.OK));
     }
 
     @PostMapping("/stock")
@@ -80,6 +175,14 @@ public class ProductController {
         return new ResponseEntity<>(productService.addProduct(productRequest, role), HttpStatus.CREATED);
     }
 
+    @PostMapping(value = "/stock/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    @Operation(summary = "Import Products", description = "Creates products in bulk from newline-delimited JSON or CSV rows and reports the rows that failed")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<ProductImportReport> importProducts(HttpServletRequest request) throws IOException {
+        String role = request.getHeader("X-USER-ROLE");
+        return new ResponseEntity<>(productImportService.importProducts(request.getInputStream(), request.getContentType(), role), HttpStatus.OK);
+    }
+
     @PutMapping("/{id}/stock")
     @Operation(summary = "Update Product", description = "Updates an existing product")
     @ResponseStatus(HttpStatus.OK)
@@ -88,6 +191,14 @@ public class ProductController {
         return new ResponseEntity<>(productService.updateProduct(id, productRequest, role), HttpStatus.OK);
     }
 
+    @PutMapping("/{id}/stock/stripes")
+    @Operation(summary = "Stripe Product Stock", description = "Splits the stock of a product across the given number of counters to spread concurrent reservations, 0 keeps it on the product")
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<ProductResponse> setStockStripes(@PathVariable String id, @RequestParam int count, HttpServletRequest request) {
+        String role = request.getHeader("X-USER-ROLE");
+        return new ResponseEntity<>(productService.setStockStripes(id, count, role), HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}/stock")
     @Operation(summary = "Delete Product", description = "Deletes an existing product")
     @ResponseStatus(HttpStatus.OK)
@@ -96,4 +207,17 @@ public class ProductController {
         productService.deleteProduct(id, role);
         return new ResponseEntity<>("Product deleted successfully !", HttpStatus.OK);
     }
+
+    // built off the request thread, the 304 for a matching If-None-Match is answered by Spring MVC when the entity is written
+    private <T> ResponseEntity<T> taggedResponse(String eTag, T body) {
+        return ResponseEntity.ok().eTag(eTag).body(body);
+    }
+
+    // answers 304 without writing the body when the client already holds the current representation
+    private <T> ResponseEntity<T> conditionalResponse(WebRequest request, String eTag, T body) {
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(body);
+    }
 }
@@ -0,0 +1,45 @@
+package com.ms.product_service.controller;
+
+import com.ms.product_service.dto.ProductResponse;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Strong ETags built from the product id, its document version and its amount, which striped products change
+ * without touching the version. A list is tagged with a digest of the same fields of the products it holds, so any
+ * change to, addition or removal of a listed product changes its tag.
+ */
+@Component
+public class ProductETags {
+
+    public String of(ProductResponse product) {
+        return "\"" + product.productId() + "-" + product.version() + "-" + product.amount() + "\"";
+    }
+
+    // lists are assembled per request from the per-id entries, so there is no list instance worth keeping a tag for
+    public String of(List<ProductResponse> products) {
+        MessageDigest digest = sha256();
+        for (ProductResponse product : products) {
+            digest.update(product.productId().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(Integer.toString(product.version()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(Integer.toString(product.amount()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ';');
+        }
+        return "\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.io.Serializable;
+
+public record CategoryFacet(ProductCategory category, long count) implements Serializable {
+}
@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.math.BigDecimal;
+
+public record CategoryStatsResponse(ProductCategory category, long productCount, long inStockCount, long totalUnits, BigDecimal minPrice, BigDecimal maxPrice) {
+}
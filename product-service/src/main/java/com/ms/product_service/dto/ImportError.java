@@ -0,0 +1,4 @@
+package com.ms.product_service.dto;
+
+public record ImportError(long row, String message) {
+}
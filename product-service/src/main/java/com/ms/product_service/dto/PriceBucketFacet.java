@@ -0,0 +1,8 @@
+package com.ms.product_service.dto;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+// 'to' is exclusive, null for the bucket of the highest prices
+public record PriceBucketFacet(BigDecimal from, BigDecimal to, long count) implements Serializable {
+}
@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.math.BigDecimal;
+
+public record ProductAvailability(String productId, String productName, BigDecimal productPrice, int amount, boolean available) {
+}
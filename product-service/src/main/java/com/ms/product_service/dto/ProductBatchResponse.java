@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.util.List;
+
+public record ProductBatchResponse(List<ProductAvailability> products, List<String> missing) {
+}
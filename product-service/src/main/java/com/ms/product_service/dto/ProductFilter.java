@@ -0,0 +1,9 @@
+package com.ms.product_service.dto;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+// normalized filter, its string form is the cache key of the results
+public record ProductFilter(ProductCategory category, BigDecimal minPrice, BigDecimal maxPrice, boolean inStock,
+                            ProductSort sort, String after, int size) implements Serializable {
+}
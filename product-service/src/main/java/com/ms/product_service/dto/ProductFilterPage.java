@@ -0,0 +1,7 @@
+package com.ms.product_service.dto;
+
+import java.util.List;
+
+public record ProductFilterPage(List<ProductResponse> products, String nextCursor, List<CategoryFacet> categories,
+                                List<PriceBucketFacet> priceBuckets) {
+}
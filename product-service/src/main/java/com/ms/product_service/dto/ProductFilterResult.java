@@ -0,0 +1,8 @@
+package com.ms.product_service.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+public record ProductFilterResult(List<String> productIds, String nextCursor, List<CategoryFacet> categories,
+                                  List<PriceBucketFacet> priceBuckets) implements Serializable {
+}
@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.util.List;
+
+public record ProductImportReport(long rows, long imported, long failed, List<ImportError> errors, long elapsedMillis, double rowsPerSecond) {
+}
@@ -0,0 +1,11 @@
+package com.ms.product_service.dto;
+
+/**
+ * How a product event affects the cached id lists: NONE leaves them, FILTER drops the filter results
+ * after a price or stock state change, MEMBERSHIP drops every list after a create, delete or category change.
+ */
+public enum ProductListChange {
+    NONE,
+    FILTER,
+    MEMBERSHIP
+}
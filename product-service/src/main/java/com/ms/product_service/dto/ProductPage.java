@@ -0,0 +1,6 @@
+package com.ms.product_service.dto;
+
+import java.util.List;
+
+public record ProductPage(List<ProductResponse> products, String nextCursor) {
+}
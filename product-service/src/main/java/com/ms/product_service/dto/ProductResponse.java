@@ -3,5 +3,5 @@ package com.ms.product_service.dto;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
-public record ProductResponse(String productId, String productName, BigDecimal productPrice, int amount, ProductCategory productCategory) implements Serializable {
+public record ProductResponse(String productId, String productName, BigDecimal productPrice, int amount, ProductCategory productCategory, int version) implements Serializable {
 }
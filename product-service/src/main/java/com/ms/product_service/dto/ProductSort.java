@@ -0,0 +1,18 @@
+package com.ms.product_service.dto;
+
+import com.ms.product_service.exception.ResourceNotFoundException;
+
+public enum ProductSort {
+    ID,
+    PRICE_ASC,
+    PRICE_DESC;
+
+    public static ProductSort fromString(String string) {
+        for (ProductSort productSort : ProductSort.values()) {
+            if (productSort.toString().equalsIgnoreCase(string)) {
+                return productSort;
+            }
+        }
+        throw new ResourceNotFoundException("Sort not found: " + string);
+    }
+}
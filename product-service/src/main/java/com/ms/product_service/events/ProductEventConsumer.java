@@ -3,33 +3,54 @@ package com.ms.product_service.events;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ms.product_service.dto.OrderDTO;
+import com.ms.product_service.dto.PaymentStatusChangedDTO;
+import com.ms.product_service.dto.ProductListChange;
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.service.ProductCacheService;
+import com.ms.product_service.service.ProductSearchService;
+import com.ms.product_service.service.ProductSuggestService;
 import com.ms.product_service.service.ProductService;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
+@Slf4j
 public class ProductEventConsumer {
 
     private final ProductService productService;
+    private final ProductCacheService productCacheService;
+    private final ProductSearchService productSearchService;
+    private final ProductSuggestService productSuggestService;
     private final ObjectMapper objectMapper;
 
     @Autowired
-    public ProductEventConsumer(ProductService productService, ObjectMapper objectMapper) {
+    public ProductEventConsumer(ProductService productService, ProductCacheService productCacheService, ProductSearchService productSearchService, ProductSuggestService productSuggestService, ObjectMapper objectMapper) {
         this.productService = productService;
+        this.productCacheService = productCacheService;
+        this.productSearchService = productSearchService;
+        this.productSuggestService = productSuggestService;
         this.objectMapper = objectMapper;
     }
 
-    @KafkaListener(topics = "check-order", groupId = "order-check")
-    public void checkOrder(ConsumerRecord<String, String> record) {
-        try {
-            String json = record.value();
-            OrderDTO orderDTO = objectMapper.readValue(json, OrderDTO.class);
-            productService.checkOrder(orderDTO);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+    @KafkaListener(topics = "check-order", groupId = "order-check", containerFactory = "batchKafkaListenerContainerFactory")
+    public void checkOrders(List<ConsumerRecord<String, String>> records) {
+        List<OrderDTO> orders = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records) {
+            try {
+                orders.add(objectMapper.readValue(record.value(), OrderDTO.class));
+            } catch (JsonProcessingException e) {
+                log.error("skipping malformed check-order record at offset {}", record.offset(), e);
+            }
         }
+        productService.checkOrders(orders);
     }
 
     @KafkaListener(topics = "recovered-stock", groupId = "stock-recover")
@@ -42,4 +63,51 @@ public class ProductEventConsumer {
             throw new RuntimeException(e);
         }
     }
+
+    @KafkaListener(topics = "succeeded-payment", groupId = "stock-hold-confirm")
+    public void receivePaymentSuccess(ConsumerRecord<String, String> record) {
+        try {
+            PaymentStatusChangedDTO changedDTO = objectMapper.readValue(record.value(), PaymentStatusChangedDTO.class);
+            productService.confirmHold(changedDTO.orderId());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @KafkaListener(topics = {"failed-payment", "canceled-payment"}, groupId = "stock-hold-release")
+    public void receivePaymentFailure(ConsumerRecord<String, String> record) {
+        try {
+            PaymentStatusChangedDTO changedDTO = objectMapper.readValue(record.value(), PaymentStatusChangedDTO.class);
+            productService.releaseHold(changedDTO.orderId());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // every replica listens in its own group so that all of them drop their local cache entries and update their search indexes
+    @KafkaListener(topics = {"created-product", "updated-product", "deleted-product"}, groupId = "product-cache-#{T(java.util.UUID).randomUUID().toString()}")
+    public void receiveProductEvents(ConsumerRecord<String, String> record) {
+        try {
+            ProductResponse product = objectMapper.readValue(record.value(), ProductResponse.class);
+            productCacheService.evictLocal(product, listChange(record));
+            if (record.topic().equals("deleted-product")) {
+                productSearchService.productDeleted(product.productId());
+                productSuggestService.productDeleted(product.productId());
+            } else {
+                productSearchService.productChanged(product.productId());
+                productSuggestService.productChanged(product);
+            }
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // created and deleted products always change list membership, as do updates sent without the header
+    private ProductListChange listChange(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(ProductEventProducer.LIST_CHANGE_HEADER);
+        if (!record.topic().equals("updated-product") || header == null) {
+            return ProductListChange.MEMBERSHIP;
+        }
+        return ProductListChange.valueOf(new String(header.value(), StandardCharsets.UTF_8));
+    }
 }
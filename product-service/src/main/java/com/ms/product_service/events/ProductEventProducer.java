@@ -3,12 +3,18 @@ package com.ms.product_service.events;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ms.product_service.dto.OrderDTO;
+import com.ms.product_service.dto.ProductListChange;
 import com.ms.product_service.dto.ProductResponse;
 import com.ms.product_service.dto.RejectOrderDTO;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class ProductEventProducer {
 
@@ -19,6 +25,9 @@ public class ProductEventProducer {
     private final String createdProductTopic = "created-product";
     private final String updatedProductTopic = "updated-product";
     private final String deletedProductTopic = "deleted-product";
+    private final String productStateTopic = "product-state";
+    private final String expiredHoldTopic = "expired-hold";
+    public static final String LIST_CHANGE_HEADER = "list-change";
 
     @Autowired
     public ProductEventProducer(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
@@ -26,19 +35,44 @@ public class ProductEventProducer {
         this.objectMapper = objectMapper;
     }
 
+    // product events are keyed by product id so that the events of one product stay ordered in a partition
+
     public void createdProduct(ProductResponse product) {
         String json = writeValueAsString(product);
-        kafkaTemplate.send(createdProductTopic, json);
+        kafkaTemplate.send(createdProductTopic, product.productId(), json);
+        kafkaTemplate.send(productStateTopic, product.productId(), json);
+    }
+
+    public void createdProducts(List<ProductResponse> products) {
+        for (ProductResponse product : products) {
+            String json = writeValueAsString(product);
+            kafkaTemplate.send(createdProductTopic, product.productId(), json);
+            kafkaTemplate.send(productStateTopic, product.productId(), json);
+        }
+        kafkaTemplate.flush();
     }
 
-    public void updatedProduct(ProductResponse product) {
+    // waits for every record to be acknowledged, so a failed send fails the caller
+    public void productStates(List<ProductResponse> products) {
+        CompletableFuture<?>[] sent = products.stream()
+                .map(product -> kafkaTemplate.send(productStateTopic, product.productId(), writeValueAsString(product)))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(sent).join();
+    }
+
+    // the header tells the other replicas which of their local id lists the update invalidates
+    public void updatedProduct(ProductResponse product, ProductListChange listChange) {
         String json = writeValueAsString(product);
-        kafkaTemplate.send(updatedProductTopic, json);
+        ProducerRecord<String, String> record = new ProducerRecord<>(updatedProductTopic, product.productId(), json);
+        record.headers().add(LIST_CHANGE_HEADER, listChange.name().getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.send(record);
+        kafkaTemplate.send(productStateTopic, product.productId(), json);
     }
 
     public void deletedProduct(ProductResponse product) {
         String json = writeValueAsString(product);
-        kafkaTemplate.send(deletedProductTopic, json);
+        kafkaTemplate.send(deletedProductTopic, product.productId(), json);
+        kafkaTemplate.send(productStateTopic, product.productId(), null);
     }
 
     public void acceptedOrder(OrderDTO order){
@@ -51,6 +85,11 @@ public class ProductEventProducer {
         kafkaTemplate.send(rejectedOrderTopic, json);
     }
 
+    // order-service fails the order and payment-service expires its checkout session
+    public void expiredHold(String orderId){
+        kafkaTemplate.send(expiredHoldTopic, orderId, orderId);
+    }
+
     private <T> String writeValueAsString(T value) {
         try {
             return objectMapper.writeValueAsString(value);
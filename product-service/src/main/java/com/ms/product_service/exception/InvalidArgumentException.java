@@ -0,0 +1,8 @@
+package com.ms.product_service.exception;
+
+public class InvalidArgumentException extends RuntimeException {
+
+    public InvalidArgumentException(String message) {
+        super(message);
+    }
+}
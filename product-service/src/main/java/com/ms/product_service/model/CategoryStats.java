@@ -0,0 +1,35 @@
+package com.ms.product_service.model;
+
+import com.ms.product_service.dto.ProductCategory;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+
+@Document(collection = "product_category_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CategoryStats {
+
+    @Id
+    private ProductCategory category;
+    private long productCount;
+    private long inStockCount;
+    private long totalUnits;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal minPrice;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal maxPrice;
+    // bumped by every write, so a reconciliation can tell whether the figures moved while it was counting
+    private long revision;
+
+    public CategoryStats(ProductCategory category) {
+        this.category = category;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ms.product_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "product_event_backfill")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBackfill {
+
+    // the topic that was backfilled
+    @Id
+    private String topic;
+    private long published;
+    private Instant completedAt;
+}
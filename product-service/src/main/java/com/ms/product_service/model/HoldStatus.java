@@ -0,0 +1,7 @@
+package com.ms.product_service.model;
+
+public enum HoldStatus {
+    HELD,
+    CONFIRMED,
+    RELEASED
+}
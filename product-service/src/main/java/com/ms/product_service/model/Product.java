@@ -5,6 +5,8 @@ import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -21,9 +23,15 @@ public class Product implements Serializable {
     private int version;
     private String name;
     private String description;
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal price;
     private ProductCategory category;
     private int amount;
+    private int stripes;
+
+    public Product(String id, int version, String name, String description, BigDecimal price, ProductCategory category, int amount) {
+        this(id, version, name, description, price, category, amount, 0);
+    }
 
     public Product(String name, String description, BigDecimal price, ProductCategory category, int amount) {
         this.name = name;
@@ -0,0 +1,24 @@
+package com.ms.product_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Document(collection = "product_stock_hold")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockHold {
+
+    @Id
+    private String orderId;
+    private Map<String, Integer> amounts;
+    private HoldStatus status;
+    private Instant expiresAt;
+    private Instant settledAt;
+}
@@ -0,0 +1,24 @@
+package com.ms.product_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "product_stock_stripe")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockStripe {
+
+    @Id
+    private String id;
+    private String productId;
+    private int stripe;
+    private int amount;
+
+    public static String idOf(String productId, int stripe) {
+        return productId + "#" + stripe;
+    }
+}
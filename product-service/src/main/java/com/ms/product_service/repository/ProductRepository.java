@@ -3,16 +3,26 @@ package com.ms.product_service.repository;
 import com.ms.product_service.dto.ProductCategory;
 import com.ms.product_service.model.Product;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductRepository extends MongoRepository<Product, String> {
     List<Product> findByCategory(ProductCategory category);
     boolean existsByIdAndAmountIsGreaterThanEqual(String id, int amount);
 
-    @CacheEvict(value = "product", allEntries = true)
+    List<Product> findAllBy(Pageable pageable);
+    List<Product> findByIdGreaterThan(String id, Pageable pageable);
+    List<Product> findByCategory(ProductCategory category, Pageable pageable);
+    List<Product> findByCategoryAndIdGreaterThan(ProductCategory category, String id, Pageable pageable);
+
+    Stream<Product> streamAllByOrderByIdAsc();
+    Stream<Product> streamByCategoryOrderByIdAsc(ProductCategory category);
+
+    @CacheEvict(value = {"product", "product-ids", "product-page", "product-filter"}, allEntries = true)
     void deleteAll();
 }
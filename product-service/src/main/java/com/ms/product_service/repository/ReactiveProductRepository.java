@@ -0,0 +1,21 @@
+package com.ms.product_service.repository;
+
+import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.model.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// read-only counterpart of ProductRepository for the non-blocking read path
+@Repository
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String> {
+    Flux<Product> findByCategory(ProductCategory category);
+    Mono<Boolean> existsByIdAndAmountIsGreaterThanEqual(String id, int amount);
+
+    Flux<Product> findAllBy(Pageable pageable);
+    Flux<Product> findByIdGreaterThan(String id, Pageable pageable);
+    Flux<Product> findByCategory(ProductCategory category, Pageable pageable);
+    Flux<Product> findByCategoryAndIdGreaterThan(ProductCategory category, String id, Pageable pageable);
+}
@@ -0,0 +1,265 @@
+package com.ms.product_service.search;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Inverted index over product names and descriptions. Terms are kept in a sorted dictionary for prefix
+ * matching, and every term is also reachable through the strings obtained by deleting up to {@code maxEdits}
+ * of its characters, so that the terms within that edit distance of a query token are found with a few
+ * lookups instead of a scan of the dictionary.
+ * <p>
+ * Documents are scored by summing, for each query token, the best of its exact, prefix and fuzzy matches,
+ * weighted by the inverse document frequency of the matched term. Documents matching more tokens come first.
+ */
+public class ProductSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final float NAME_WEIGHT = 3f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final float PREFIX_FACTOR = 0.8f;
+    private static final float FUZZY_FACTOR = 0.6f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private record Document(String category, int textHash, Map<String, Float> weights) {
+    }
+
+    private record Match(String term, float factor) {
+    }
+
+    private record Hit(String productId, int matchedTokens, float score) {
+    }
+
+    private final int maxEdits;
+    private final Map<String, Document> documents = new HashMap<>();
+    private final NavigableMap<String, Map<String, Float>> postings = new TreeMap<>();
+    private final Map<String, Set<String>> deletions = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ProductSearchIndex(int maxEdits) {
+        this.maxEdits = maxEdits;
+    }
+
+    public void index(String productId, String name, String description, String category) {
+        int textHash = Objects.hash(name, description);
+        lock.readLock().lock();
+        try {
+            Document indexed = documents.get(productId);
+            if (indexed != null && indexed.textHash() == textHash && Objects.equals(indexed.category(), category)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<String, Float> weights = new HashMap<>();
+        tokenize(name).forEach(term -> weights.merge(term, NAME_WEIGHT, Float::sum));
+        tokenize(description).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Float::sum));
+
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+            documents.put(productId, new Document(category, textHash, weights));
+            weights.forEach((term, weight) -> postings.computeIfAbsent(term, this::addTerm).put(productId, weight));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the best matching products, best first, optionally restricted to one category.
+     */
+    public List<String> search(String query, String category, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<String, Float> scores = new HashMap<>();
+            Map<String, Integer> matchedTokens = new HashMap<>();
+            for (String token : tokens) {
+                Map<String, Float> tokenScores = new HashMap<>();
+                for (Match match : expand(token)) {
+                    Map<String, Float> termPostings = postings.get(match.term());
+                    float idf = (float) Math.log(1 + (double) documents.size() / termPostings.size());
+                    termPostings.forEach((productId, weight) -> {
+                        if (category == null || category.equals(documents.get(productId).category())) {
+                            tokenScores.merge(productId, idf * weight * match.factor(), Math::max);
+                        }
+                    });
+                }
+                tokenScores.forEach((productId, score) -> {
+                    scores.merge(productId, score, Float::sum);
+                    matchedTokens.merge(productId, 1, Integer::sum);
+                });
+            }
+
+            Comparator<Hit> ranking = Comparator.comparingInt(Hit::matchedTokens)
+                    .thenComparing(Hit::score)
+                    .thenComparing(Hit::productId, Comparator.reverseOrder());
+            PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, ranking);
+            scores.forEach((productId, score) -> {
+                best.add(new Hit(productId, matchedTokens.get(productId), score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            });
+
+            List<String> productIds = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                productIds.add(best.poll().productId());
+            }
+            Collections.reverse(productIds);
+            return productIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the terms a query token stands for: itself, the terms it is a prefix of and the terms within its edit budget
+    private List<Match> expand(String token) {
+        Map<String, Float> factors = new HashMap<>();
+        if (postings.containsKey(token)) {
+            factors.put(token, 1f);
+        }
+        if (token.length() >= 2) {
+            int expansions = 0;
+            for (String term : postings.subMap(token, false, token + Character.MAX_VALUE, false).keySet()) {
+                if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                factors.merge(term, PREFIX_FACTOR, Math::max);
+            }
+        }
+
+        int edits = allowedEdits(token);
+        if (edits > 0) {
+            for (String variant : deletionVariants(token, edits)) {
+                for (String term : deletions.getOrDefault(variant, Set.of())) {
+                    int distance = editDistance(token, term, edits);
+                    if (distance > 0 && distance <= edits) {
+                        factors.merge(term, FUZZY_FACTOR / distance, Math::max);
+                    }
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(factors.size());
+        factors.forEach((term, factor) -> matches.add(new Match(term, factor)));
+        return matches;
+    }
+
+    // short tokens get no typo budget, longer ones up to the configured bound
+    private int allowedEdits(String token) {
+        if (token.length() < 4) {
+            return 0;
+        }
+        return Math.min(maxEdits, token.length() < 8 ? 1 : 2);
+    }
+
+    private Map<String, Float> addTerm(String term) {
+        for (String variant : deletionVariants(term, maxEdits)) {
+            deletions.computeIfAbsent(variant, key -> new HashSet<>()).add(term);
+        }
+        return new HashMap<>();
+    }
+
+    private void removeDocument(String productId) {
+        Document document = documents.remove(productId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.weights().keySet()) {
+            Map<String, Float> termPostings = postings.get(term);
+            termPostings.remove(productId);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+                for (String variant : deletionVariants(term, maxEdits)) {
+                    Set<String> terms = deletions.get(variant);
+                    terms.remove(term);
+                    if (terms.isEmpty()) {
+                        deletions.remove(variant);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Set<String> deletionVariants(String term, int edits) {
+        Set<String> variants = new HashSet<>();
+        variants.add(term);
+        Set<String> current = Set.of(term);
+        for (int i = 0; i < edits; i++) {
+            Set<String> next = new HashSet<>();
+            for (String variant : current) {
+                for (int j = 0; j < variant.length(); j++) {
+                    next.add(variant.substring(0, j) + variant.substring(j + 1));
+                }
+            }
+            variants.addAll(next);
+            current = next;
+        }
+        return variants;
+    }
+
+    // optimal string alignment distance, gives up once every alignment exceeds the bound
+    static int editDistance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int rowMin = Integer.MAX_VALUE;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, d[i][j]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized)).filter(token -> !token.isEmpty()).toList();
+    }
+}
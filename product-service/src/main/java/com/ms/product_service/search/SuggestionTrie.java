@@ -0,0 +1,180 @@
+package com.ms.product_service.search;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix trie of product names in which every node keeps the top-k products below it, so a suggestion is a walk
+ * down the typed prefix and a copy of one array. A name is inserted once from the start of each of its words.
+ * <p>
+ * Children are held in sorted parallel arrays rather than maps, and nodes are copied on write: readers never
+ * lock, writers are serialized by the caller. Removing a product can leave a node with fewer than k entries
+ * even though other products below it could fill the gap; a periodic rebuild puts them back.
+ */
+public class SuggestionTrie {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Suggestion[] NONE = new Suggestion[0];
+    private static final Branches NO_BRANCHES = new Branches(new char[0], new Node[0]);
+
+    public record Suggestion(String productId, String productName, int score) {
+    }
+
+    private record Branches(char[] labels, Node[] children) {
+    }
+
+    private static final class Node {
+        // labels and children are swapped together so that a reader never pairs a label with the wrong child
+        volatile Branches branches = NO_BRANCHES;
+        volatile Suggestion[] top = NONE;
+
+        Node child(char label) {
+            Branches current = branches;
+            int index = Arrays.binarySearch(current.labels(), label);
+            return index >= 0 ? current.children()[index] : null;
+        }
+
+        Node childOrCreate(char label) {
+            Branches current = branches;
+            int index = Arrays.binarySearch(current.labels(), label);
+            if (index >= 0) {
+                return current.children()[index];
+            }
+            int insertAt = -index - 1;
+            int size = current.labels().length;
+            Node child = new Node();
+            char[] labels = new char[size + 1];
+            Node[] children = new Node[size + 1];
+            System.arraycopy(current.labels(), 0, labels, 0, insertAt);
+            System.arraycopy(current.children(), 0, children, 0, insertAt);
+            labels[insertAt] = label;
+            children[insertAt] = child;
+            System.arraycopy(current.labels(), insertAt, labels, insertAt + 1, size - insertAt);
+            System.arraycopy(current.children(), insertAt, children, insertAt + 1, size - insertAt);
+            branches = new Branches(labels, children);
+            return child;
+        }
+    }
+
+    private final int k;
+    private final Node root = new Node();
+    private final Map<String, Suggestion> entries = new HashMap<>();
+
+    public SuggestionTrie(int k) {
+        this.k = k;
+    }
+
+    /**
+     * Adds a product or replaces its previous name and score. Calls must not run concurrently with each other.
+     */
+    public void put(String productId, String productName, int score) {
+        Suggestion previous = entries.get(productId);
+        if (previous != null && previous.productName().equals(productName) && previous.score() == score) {
+            return;
+        }
+        if (previous != null) {
+            remove(productId);
+        }
+
+        Suggestion suggestion = new Suggestion(productId, productName, score);
+        entries.put(productId, suggestion);
+        for (String key : keys(productName)) {
+            Node node = root;
+            offer(node, suggestion);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.childOrCreate(key.charAt(i));
+                offer(node, suggestion);
+            }
+        }
+    }
+
+    /**
+     * Removes a product. Calls must not run concurrently with {@link #put}.
+     */
+    public void remove(String productId) {
+        Suggestion previous = entries.remove(productId);
+        if (previous == null) {
+            return;
+        }
+        for (String key : keys(previous.productName())) {
+            Node node = root;
+            withdraw(node, productId);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+                if (node != null) {
+                    withdraw(node, productId);
+                }
+            }
+        }
+    }
+
+    public List<Suggestion> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) {
+            return List.of();
+        }
+        Suggestion[] top = node.top;
+        return List.of(Arrays.copyOf(top, Math.min(limit, top.length)));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void offer(Node node, Suggestion suggestion) {
+        Suggestion[] current = node.top;
+        if (current.length == k && compare(suggestion, current[k - 1]) >= 0) {
+            return;
+        }
+        List<Suggestion> updated = new ArrayList<>(current.length + 1);
+        for (Suggestion existing : current) {
+            if (!existing.productId().equals(suggestion.productId())) {
+                updated.add(existing);
+            }
+        }
+        updated.add(suggestion);
+        updated.sort(SuggestionTrie::compare);
+        node.top = updated.subList(0, Math.min(k, updated.size())).toArray(NONE);
+    }
+
+    private void withdraw(Node node, String productId) {
+        Suggestion[] current = node.top;
+        for (Suggestion existing : current) {
+            if (existing.productId().equals(productId)) {
+                node.top = Arrays.stream(current).filter(s -> !s.productId().equals(productId)).toArray(Suggestion[]::new);
+                return;
+            }
+        }
+    }
+
+    // highest score first, then alphabetically
+    private static int compare(Suggestion a, Suggestion b) {
+        int byScore = Integer.compare(b.score(), a.score());
+        return byScore != 0 ? byScore : a.productName().compareToIgnoreCase(b.productName());
+    }
+
+    private static Set<String> keys(String productName) {
+        String normalized = normalize(productName);
+        Set<String> keys = new LinkedHashSet<>();
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            keys.add(String.join(" ", Arrays.asList(words).subList(i, words.length)));
+        }
+        keys.remove("");
+        return keys;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        return SEPARATORS.matcher(stripped).replaceAll(" ").strip();
+    }
+}
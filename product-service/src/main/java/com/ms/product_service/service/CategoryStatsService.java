@@ -0,0 +1,258 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.CategoryStatsResponse;
+import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.model.CategoryStats;
+import com.ms.product_service.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Keeps one document of running figures per category: product count, in-stock count, total units and price range.
+ * Counts and units are moved with $inc by the write paths, prices widen with $min/$max and are looked up again
+ * through the category/price index when a product leaves a category or changes price. A scheduled reconciliation
+ * recounts the catalog and corrects whatever drifted, such as stock moved by concurrent orders between a
+ * reservation and its read back.
+ */
+@Service
+@Slf4j
+public class CategoryStatsService {
+
+    private final MongoTemplate mongoTemplate;
+    private final StripedStockService stripedStockService;
+    private final Counter correctionCounter;
+
+    @Autowired
+    public CategoryStatsService(MongoTemplate mongoTemplate, StripedStockService stripedStockService, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.stripedStockService = stripedStockService;
+        this.correctionCounter = Counter.builder("product.category.stats.corrections")
+                .description("Category figures corrected by the reconciliation")
+                .register(meterRegistry);
+    }
+
+    public CategoryStatsResponse getStats(String category) {
+        ProductCategory productCategory = ProductCategory.fromString(category);
+        CategoryStats stats = mongoTemplate.findById(productCategory, CategoryStats.class);
+        return mapStatsToResponse(stats != null ? stats : new CategoryStats(productCategory));
+    }
+
+    public List<CategoryStatsResponse> getAllStats() {
+        Map<ProductCategory, CategoryStats> stored = findAll();
+        return Arrays.stream(ProductCategory.values())
+                .map(category -> mapStatsToResponse(stored.getOrDefault(category, new CategoryStats(category))))
+                .toList();
+    }
+
+    // new products are never striped, their amount is on the document
+    public void productsAdded(Collection<Product> products) {
+        Map<ProductCategory, List<Product>> byCategory = new EnumMap<>(ProductCategory.class);
+        products.forEach(product -> byCategory.computeIfAbsent(product.getCategory(), category -> new ArrayList<>()).add(product));
+        byCategory.forEach((category, added) -> {
+            Update update = figures(added.size(),
+                    added.stream().filter(product -> product.getAmount() > 0).count(),
+                    added.stream().mapToLong(Product::getAmount).sum());
+            List<BigDecimal> prices = added.stream().map(Product::getPrice).filter(Objects::nonNull).toList();
+            widenPriceRange(update, prices);
+            upsert(category, update);
+        });
+    }
+
+    public void productRemoved(Product product, int amount) {
+        upsert(product.getCategory(), figures(-1, amount > 0 ? -1 : 0, -amount));
+        refreshPriceRange(product.getCategory());
+    }
+
+    public void productUpdated(ProductCategory previousCategory, BigDecimal previousPrice, int previousAmount, Product product, int amount) {
+        if (previousCategory != product.getCategory()) {
+            upsert(previousCategory, figures(-1, previousAmount > 0 ? -1 : 0, -previousAmount));
+            refreshPriceRange(previousCategory);
+            Update update = figures(1, amount > 0 ? 1 : 0, amount);
+            widenPriceRange(update, product.getPrice() == null ? List.of() : List.of(product.getPrice()));
+            upsert(product.getCategory(), update);
+            return;
+        }
+
+        upsert(product.getCategory(), figures(0, inStock(amount) - inStock(previousAmount), amount - previousAmount));
+        if (!samePrice(previousPrice, product.getPrice())) {
+            refreshPriceRange(product.getCategory());
+        }
+    }
+
+    /**
+     * Applies stock moved by orders, given the products read back after the change and the signed amount that
+     * moved per product id. The stock before the change is the amount read back less the amount moved.
+     */
+    public void stockChanged(Collection<ProductResponse> products, Map<String, Integer> moved) {
+        Map<ProductCategory, long[]> changes = new EnumMap<>(ProductCategory.class);
+        for (ProductResponse product : products) {
+            int amount = moved.getOrDefault(product.productId(), 0);
+            if (amount == 0) {
+                continue;
+            }
+            long[] change = changes.computeIfAbsent(product.productCategory(), category -> new long[2]);
+            change[0] += inStock(product.amount()) - inStock(product.amount() - amount);
+            change[1] += amount;
+        }
+        changes.forEach((category, change) -> upsert(category, figures(0, change[0], change[1])));
+    }
+
+    // seeds the figures of a catalog that predates them, instead of serving zeros until the first scheduled run
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcile();
+    }
+
+    /**
+     * Recounts every category from the products and their stripes and corrects the stored figures that differ.
+     * A category written to while it was being counted is left for the next run, and corrections are applied as
+     * increments so that writes landing after the check are kept.
+     */
+    @Scheduled(initialDelayString = "${product.stats.reconcile-interval-ms:300000}", fixedDelayString = "${product.stats.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        Map<ProductCategory, CategoryStats> before = findAll();
+        Map<ProductCategory, CategoryStats> counted = count();
+        Map<ProductCategory, CategoryStats> after = findAll();
+
+        for (ProductCategory category : ProductCategory.values()) {
+            CategoryStats stored = after.getOrDefault(category, new CategoryStats(category));
+            CategoryStats actual = counted.getOrDefault(category, new CategoryStats(category));
+            if (!Objects.equals(before.get(category), after.get(category)) || sameFigures(stored, actual)) {
+                continue;
+            }
+
+            log.warn("correcting figures of category {} -- stored {}, counted {}", category, stored, actual);
+            correctionCounter.increment();
+            Update update = figures(actual.getProductCount() - stored.getProductCount(),
+                    actual.getInStockCount() - stored.getInStockCount(),
+                    actual.getTotalUnits() - stored.getTotalUnits());
+            setPrice(update, "minPrice", actual.getMinPrice());
+            setPrice(update, "maxPrice", actual.getMaxPrice());
+            upsert(category, update);
+        }
+    }
+
+    private Map<ProductCategory, CategoryStats> count() {
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.group("category")
+                .count().as("productCount")
+                .sum(ConditionalOperators.when(Criteria.where("amount").gt(0)).then(1).otherwise(0)).as("inStockCount")
+                .sum("amount").as("totalUnits")
+                .min("price").as("minPrice")
+                .max("price").as("maxPrice"));
+
+        Map<ProductCategory, CategoryStats> counted = new EnumMap<>(ProductCategory.class);
+        for (Document group : mongoTemplate.aggregate(aggregation, Product.class, Document.class)) {
+            if (group.get("_id") == null) {
+                continue;
+            }
+            ProductCategory category = ProductCategory.valueOf(group.getString("_id"));
+            counted.put(category, new CategoryStats(category,
+                    group.get("productCount", Number.class).longValue(),
+                    group.get("inStockCount", Number.class).longValue(),
+                    group.get("totalUnits", Number.class).longValue(),
+                    decimalOf(group.get("minPrice")),
+                    decimalOf(group.get("maxPrice")),
+                    0));
+        }
+
+        // striped products hold an amount of 0 on their own document, their stock is in the stripes
+        Query striped = new Query(Criteria.where("stripes").gt(0));
+        striped.fields().include("id").include("category").include("stripes");
+        for (Product product : mongoTemplate.find(striped, Product.class)) {
+            CategoryStats stats = counted.get(product.getCategory());
+            int amount = stripedStockService.getAmount(product);
+            if (stats != null && amount > 0) {
+                stats.setInStockCount(stats.getInStockCount() + 1);
+                stats.setTotalUnits(stats.getTotalUnits() + amount);
+            }
+        }
+        return counted;
+    }
+
+    private void refreshPriceRange(ProductCategory category) {
+        Update update = new Update().inc("revision", 1);
+        setPrice(update, "minPrice", findPrice(category, Sort.Direction.ASC));
+        setPrice(update, "maxPrice", findPrice(category, Sort.Direction.DESC));
+        upsert(category, update);
+    }
+
+    // served by the category/price filter index
+    private BigDecimal findPrice(ProductCategory category, Sort.Direction direction) {
+        Query query = new Query(Criteria.where("category").is(category)).with(Sort.by(direction, "price")).limit(1);
+        query.fields().include("price");
+        Product product = mongoTemplate.findOne(query, Product.class);
+        return product != null ? product.getPrice() : null;
+    }
+
+    private Map<ProductCategory, CategoryStats> findAll() {
+        Map<ProductCategory, CategoryStats> stored = new EnumMap<>(ProductCategory.class);
+        mongoTemplate.findAll(CategoryStats.class).forEach(stats -> stored.put(stats.getCategory(), stats));
+        return stored;
+    }
+
+    private Update figures(long products, long inStock, long units) {
+        return new Update().inc("productCount", products).inc("inStockCount", inStock).inc("totalUnits", units).inc("revision", 1);
+    }
+
+    private void widenPriceRange(Update update, List<BigDecimal> prices) {
+        if (!prices.isEmpty()) {
+            update.min("minPrice", new Decimal128(Collections.min(prices)));
+            update.max("maxPrice", new Decimal128(Collections.max(prices)));
+        }
+    }
+
+    private void setPrice(Update update, String field, BigDecimal price) {
+        if (price == null) {
+            update.unset(field);
+        } else {
+            update.set(field, new Decimal128(price));
+        }
+    }
+
+    private void upsert(ProductCategory category, Update update) {
+        mongoTemplate.upsert(new Query(Criteria.where("category").is(category)), update, CategoryStats.class);
+    }
+
+    private boolean sameFigures(CategoryStats stored, CategoryStats actual) {
+        return stored.getProductCount() == actual.getProductCount()
+                && stored.getInStockCount() == actual.getInStockCount()
+                && stored.getTotalUnits() == actual.getTotalUnits()
+                && samePrice(stored.getMinPrice(), actual.getMinPrice())
+                && samePrice(stored.getMaxPrice(), actual.getMaxPrice());
+    }
+
+    private boolean samePrice(BigDecimal stored, BigDecimal actual) {
+        return stored == null ? actual == null : actual != null && stored.compareTo(actual) == 0;
+    }
+
+    private BigDecimal decimalOf(Object value) {
+        return value instanceof Decimal128 decimal ? decimal.bigDecimalValue() : null;
+    }
+
+    private int inStock(int amount) {
+        return amount > 0 ? 1 : 0;
+    }
+
+    private CategoryStatsResponse mapStatsToResponse(CategoryStats stats) {
+        return new CategoryStatsResponse(stats.getCategory(), stats.getProductCount(), stats.getInStockCount(), stats.getTotalUnits(), stats.getMinPrice(), stats.getMaxPrice());
+    }
+}
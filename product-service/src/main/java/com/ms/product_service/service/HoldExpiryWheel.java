@@ -0,0 +1,70 @@
+package com.ms.product_service.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel of order ids waiting for their hold to expire. Scheduling is O(1) and each tick only
+ * looks at the ids of one slot, ids due in a later turn of the wheel are put back in their slot.
+ * Ids are never removed before they are due, settling a hold early makes its expiry a no-op instead.
+ */
+class HoldExpiryWheel {
+
+    private record Timeout(String orderId, long tick) {
+    }
+
+    private final long tickMillis;
+    private final Queue<Timeout>[] slots;
+    private final AtomicInteger pending = new AtomicInteger();
+    private long lastTick;
+
+    @SuppressWarnings("unchecked")
+    HoldExpiryWheel(long tickMillis, int size) {
+        this.tickMillis = tickMillis;
+        this.slots = new Queue[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    void schedule(String orderId, Instant expiresAt) {
+        long tick = Math.ceilDiv(expiresAt.toEpochMilli(), tickMillis);
+        slots[(int) (tick % slots.length)].add(new Timeout(orderId, tick));
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Moves the wheel up to the given time and returns the ids that became due on the way.
+     */
+    synchronized List<String> advance(Instant now) {
+        long currentTick = now.toEpochMilli() / tickMillis;
+        List<String> due = new ArrayList<>();
+        // a long pause is capped at one turn, every slot gets drained once
+        long from = Math.max(lastTick + 1, currentTick - slots.length + 1);
+        for (long tick = from; tick <= currentTick; tick++) {
+            Queue<Timeout> slot = slots[(int) (tick % slots.length)];
+            List<Timeout> later = new ArrayList<>();
+            Timeout timeout;
+            while ((timeout = slot.poll()) != null) {
+                if (timeout.tick() <= currentTick) {
+                    due.add(timeout.orderId());
+                } else {
+                    later.add(timeout);
+                }
+            }
+            slot.addAll(later);
+        }
+        lastTick = Math.max(lastTick, currentTick);
+        pending.addAndGet(-due.size());
+        return due;
+    }
+
+    int pending() {
+        return pending.get();
+    }
+}
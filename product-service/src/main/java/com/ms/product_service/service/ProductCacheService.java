@@ -1,69 +1,188 @@
 package com.ms.product_service.service;
 
+import com.ms.product_service.cache.TwoLevelCache;
+import com.ms.product_service.cache.TwoLevelCacheManager;
 import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.dto.ProductFilter;
+import com.ms.product_service.dto.ProductFilterResult;
+import com.ms.product_service.dto.ProductListChange;
 import com.ms.product_service.dto.ProductResponse;
 import com.ms.product_service.exception.ResourceNotFoundException;
 import com.ms.product_service.model.Product;
 import com.ms.product_service.repository.ProductRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
 public class ProductCacheService {
 
     private final ProductRepository productRepository;
+    private final TwoLevelCacheManager cacheManager;
+    private final StripedStockService stripedStockService;
+    private final ProductFilterService productFilterService;
 
     @Autowired
-    public ProductCacheService(ProductRepository productRepository) {
+    public ProductCacheService(ProductRepository productRepository, TwoLevelCacheManager cacheManager, StripedStockService stripedStockService, ProductFilterService productFilterService) {
         this.productRepository = productRepository;
+        this.cacheManager = cacheManager;
+        this.stripedStockService = stripedStockService;
+        this.productFilterService = productFilterService;
     }
 
 
-    @Cacheable(value = "product", key = "'all'")
+    // like pages, the 'all' and category lists only hold product ids, so stock and price changes leave them cached
     public List<ProductResponse> getProducts() {
-        log.info("getProducts called -- accessing database");
-        List<Product> products = productRepository.findAll();
-        return products.stream().map(this::mapProductToResponse).toList();
+        return getProductsByIds(getProductIds("all", productRepository::findAll));
     }
 
-    @Cacheable(value = "product", key = "#id")
+    @Cacheable(value = "product", key = "#id", sync = true)
     public ProductResponse getProductById(String id) {
         log.info("getProductById called -- accessing database");
         Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product not found with ID: " + id));
         return mapProductToResponse(product);
     }
 
-    @Cacheable(value = "product-cat", key = "#category.toUpperCase()")
     public List<ProductResponse> getProductByCategory(String category) {
-        log.info("getProductByCategory called -- accessing database");
         ProductCategory productCategory = ProductCategory.fromString(category);
-        List<Product> products = productRepository.findByCategory(productCategory);
-        return products.stream().map(this::mapProductToResponse).toList();
+        return getProductsByIds(getProductIds(category.toUpperCase(), () -> productRepository.findByCategory(productCategory)));
+    }
+
+    private List<String> getProductIds(String key, Supplier<List<Product>> loader) {
+        return cacheManager.getCache("product-ids").get(key, () -> {
+            log.info("getProductIds called -- accessing database");
+            List<Product> products = loader.get();
+            Cache productCache = cacheManager.getCache("product");
+            products.forEach(product -> productCache.putIfAbsent(product.getId(), mapProductToResponse(product)));
+            return products.stream().map(Product::getId).toList();
+        });
+    }
+
+    // pages only hold product ids, the products themselves are read through the per-id entries that stock changes keep current
+    @Cacheable(value = "product-page", key = "#category + ':' + #after + ':' + #size", sync = true)
+    public List<String> getProductPageIds(String category, String after, int size) {
+        log.info("getProductPageIds called -- accessing database");
+        Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+        List<Product> products;
+        if(category.isEmpty()) {
+            products = after.isEmpty() ? productRepository.findAllBy(pageable) : productRepository.findByIdGreaterThan(after, pageable);
+        } else {
+            ProductCategory productCategory = ProductCategory.fromString(category);
+            products = after.isEmpty() ? productRepository.findByCategory(productCategory, pageable)
+                    : productRepository.findByCategoryAndIdGreaterThan(productCategory, after, pageable);
+        }
+
+        Cache productCache = cacheManager.getCache("product");
+        products.forEach(product -> productCache.putIfAbsent(product.getId(), mapProductToResponse(product)));
+        return products.stream().map(Product::getId).toList();
+    }
+
+    // like pages, filter results hold product ids and are keyed by the normalized filter
+    @Cacheable(value = "product-filter", key = "#filter.toString()", sync = true)
+    public ProductFilterResult getFilterResult(ProductFilter filter) {
+        log.info("getFilterResult called -- accessing database");
+        return productFilterService.filter(filter);
+    }
 
+    /**
+     * Returns the cached products with the given ids, loading the missing ones with a single query.
+     * Ids of products that no longer exist are skipped.
+     */
+    public List<ProductResponse> getProductsByIds(List<String> ids) {
+        TwoLevelCache productCache = cacheManager.getCache("product");
+        Map<String, ProductResponse> found = new HashMap<>();
+        productCache.getAll(ids).forEach((id, product) -> {
+            if(product instanceof ProductResponse response) {
+                found.put((String) id, response);
+            }
+        });
+
+        List<String> missing = ids.stream().filter(id -> !found.containsKey(id)).distinct().toList();
+        if(!missing.isEmpty()) {
+            log.info("getProductsByIds called -- accessing database for {} products", missing.size());
+            for(Product product: productRepository.findAllById(missing)) {
+                ProductResponse response = mapProductToResponse(product);
+                productCache.put(product.getId(), response);
+                found.put(product.getId(), response);
+            }
+        }
+        return ids.stream().map(found::get).filter(Objects::nonNull).toList();
     }
 
-    @Cacheable(value = "product-price", key = "#id")
+    @Cacheable(value = "product-price", key = "#id", sync = true)
     public BigDecimal getPrice(String id) {
         log.info("getPrice called -- accessing database");
         Optional<Product> product = productRepository.findById(id);
         return product.map(Product::getPrice).orElseThrow(() -> new ResourceNotFoundException("Product not found with ID: " + id));
     }
 
-    @Cacheable(value = "product-name", key = "#id")
+    @Cacheable(value = "product-name", key = "#id", sync = true)
     public String getName(String id){
         log.info("getName called -- accessing database");
         Optional<Product> product = productRepository.findById(id);
         return product.map(Product::getName).orElseThrow(() -> new ResourceNotFoundException("Product not found with ID: " + id));
     }
 
+    /**
+     * Evicts the cached views of changed products, the id lists holding them stay cached and read the products
+     * back through the per-id entries. Filter results are dropped when a product goes in or out of stock.
+     *
+     * @return the ids of the products that may have gone in or out of stock
+     */
+    public Set<String> refresh(Collection<ProductResponse> products) {
+        TwoLevelCache productCache = cacheManager.getCache("product");
+        Set<String> stockStateChanged = new HashSet<>();
+        for(ProductResponse product: products) {
+            if(stockStateChanged(productCache, product)) {
+                stockStateChanged.add(product.productId());
+            }
+        }
+        if(!stockStateChanged.isEmpty()) {
+            cacheManager.getCache("product-filter").clear();
+        }
+
+        for(ProductResponse product: products) {
+            productCache.evict(product.productId());
+            cacheManager.getCache("product-price").evict(product.productId());
+            cacheManager.getCache("product-name").evict(product.productId());
+        }
+        return stockStateChanged;
+    }
+
+    // a product that is not cached may have changed either way
+    private boolean stockStateChanged(TwoLevelCache productCache, ProductResponse product) {
+        Cache.ValueWrapper cached = productCache.getShared(product.productId());
+        if(cached == null || !(cached.get() instanceof ProductResponse previous)) {
+            return true;
+        }
+        return (previous.amount() > 0) != (product.amount() > 0);
+    }
+
+    // drops the in-process copies of a product changed by any replica, the shared Redis entries are evicted by the writer
+    public void evictLocal(ProductResponse product, ProductListChange listChange) {
+        cacheManager.evictLocal("product", product.productId());
+        cacheManager.evictLocal("product-price", product.productId());
+        cacheManager.evictLocal("product-name", product.productId());
+        if(listChange == ProductListChange.MEMBERSHIP) {
+            cacheManager.clearLocal("product-ids");
+            cacheManager.clearLocal("product-page");
+        }
+        if(listChange != ProductListChange.NONE) {
+            cacheManager.clearLocal("product-filter");
+        }
+    }
+
     public ProductResponse mapProductToResponse(Product product) {
-        return new ProductResponse(product.getId(), product.getName(), product.getPrice(), product.getAmount(), product.getCategory());
+        return new ProductResponse(product.getId(), product.getName(), product.getPrice(), stripedStockService.getAmount(product), product.getCategory(), product.getVersion());
     }
 }
@@ -0,0 +1,195 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.*;
+import com.ms.product_service.exception.InvalidArgumentException;
+import com.ms.product_service.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Runs catalog filters with keyset pagination and computes their facets. Each facet ignores its own dimension,
+ * so the category counts follow the price range and the price buckets follow the category, and both are
+ * computed by one aggregation whose leading $match uses the same compound indexes as the page query.
+ */
+@Service
+@Slf4j
+public class ProductFilterService {
+
+    private final MongoTemplate mongoTemplate;
+    private final List<BigDecimal> priceBuckets;
+
+    @Autowired
+    public ProductFilterService(MongoTemplate mongoTemplate, @Value("${product.filter.price-buckets:10,25,50,100,250,500,1000}") List<BigDecimal> priceBuckets) {
+        this.mongoTemplate = mongoTemplate;
+        this.priceBuckets = priceBuckets.stream().sorted().toList();
+
+        IndexOperations indexOps = mongoTemplate.indexOps(Product.class);
+        indexOps.ensureIndex(new Index().named("filter_category_price")
+                .on("category", Sort.Direction.ASC).on("price", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)
+                .on("amount", Sort.Direction.ASC).on("stripes", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().named("filter_price")
+                .on("price", Sort.Direction.ASC).on("_id", Sort.Direction.ASC)
+                .on("amount", Sort.Direction.ASC).on("stripes", Sort.Direction.ASC).on("category", Sort.Direction.ASC));
+        indexOps.ensureIndex(new Index().named("filter_category_id")
+                .on("category", Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+    }
+
+    // prices used to be stored as strings, which compare as text
+    @EventListener(ApplicationReadyEvent.class)
+    public void convertTextPrices() {
+        Query textPrices = new Query(Criteria.where("price").type(2));
+        AggregationUpdate toDecimal = AggregationUpdate.update().set("price").toValue(ConvertOperators.valueOf("price").convertToDecimal());
+        long converted = mongoTemplate.updateMulti(textPrices, toDecimal, Product.class).getModifiedCount();
+        if (converted > 0) {
+            log.info("converted the price of {} products to decimal", converted);
+        }
+    }
+
+    public ProductFilterResult filter(ProductFilter filter) {
+        Criteria categoryCriteria = categoryCriteria(filter);
+        Criteria priceCriteria = priceCriteria(filter);
+        Criteria stockCriteria = stockCriteria(filter);
+
+        Query query = new Query(new Criteria().andOperator(categoryCriteria, priceCriteria, stockCriteria, afterCriteria(filter)))
+                .with(sortOf(filter.sort()))
+                .limit(filter.size() + 1);
+        query.fields().include("id").include("price");
+        List<Product> products = mongoTemplate.find(query, Product.class);
+
+        String nextCursor = null;
+        if (products.size() > filter.size()) {
+            products = products.subList(0, filter.size());
+            nextCursor = cursorOf(products.getLast(), filter.sort());
+        }
+
+        Aggregation facets = Aggregation.newAggregation(
+                Aggregation.match(stockCriteria),
+                Aggregation.facet(Aggregation.match(priceCriteria), Aggregation.group("category").count().as("count")).as("categories")
+                        .and(Aggregation.match(categoryCriteria), Aggregation.bucket("price")
+                                .withBoundaries(priceBoundaries())
+                                .withDefaultBucket("other")
+                                .andOutputCount().as("count")).as("prices"));
+        Document facetResult = mongoTemplate.aggregate(facets, Product.class, Document.class).getUniqueMappedResult();
+
+        return new ProductFilterResult(products.stream().map(Product::getId).toList(), nextCursor,
+                categoryFacets(facetResult), priceFacets(facetResult));
+    }
+
+    private Criteria categoryCriteria(ProductFilter filter) {
+        return filter.category() == null ? new Criteria() : Criteria.where("category").is(filter.category());
+    }
+
+    private Criteria priceCriteria(ProductFilter filter) {
+        if (filter.minPrice() == null && filter.maxPrice() == null) {
+            return new Criteria();
+        }
+        Criteria criteria = Criteria.where("price");
+        if (filter.minPrice() != null) {
+            criteria.gte(new Decimal128(filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            criteria.lte(new Decimal128(filter.maxPrice()));
+        }
+        return criteria;
+    }
+
+    // striped products keep their stock in their stripes and an amount of 0 on the product
+    private Criteria stockCriteria(ProductFilter filter) {
+        if (!filter.inStock()) {
+            return new Criteria();
+        }
+        return new Criteria().orOperator(Criteria.where("amount").gt(0), Criteria.where("stripes").gt(0));
+    }
+
+    private Criteria afterCriteria(ProductFilter filter) {
+        if (filter.after() == null) {
+            return new Criteria();
+        }
+        if (filter.sort() == ProductSort.ID) {
+            return Criteria.where("id").gt(filter.after());
+        }
+
+        Decimal128 price;
+        String id;
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(filter.after()), StandardCharsets.UTF_8);
+            int separator = cursor.indexOf(':');
+            price = new Decimal128(new BigDecimal(cursor.substring(0, separator)));
+            id = cursor.substring(separator + 1);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidArgumentException("Malformed cursor: " + filter.after());
+        }
+        Criteria beyondPrice = filter.sort() == ProductSort.PRICE_ASC ? Criteria.where("price").gt(price) : Criteria.where("price").lt(price);
+        return new Criteria().orOperator(beyondPrice, Criteria.where("price").is(price).and("id").gt(id));
+    }
+
+    private Sort sortOf(ProductSort sort) {
+        return switch (sort) {
+            case ID -> Sort.by("id");
+            case PRICE_ASC -> Sort.by(Sort.Order.asc("price"), Sort.Order.asc("id"));
+            case PRICE_DESC -> Sort.by(Sort.Order.desc("price"), Sort.Order.asc("id"));
+        };
+    }
+
+    private String cursorOf(Product product, ProductSort sort) {
+        if (sort == ProductSort.ID) {
+            return product.getId();
+        }
+        String cursor = product.getPrice().toPlainString() + ":" + product.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] priceBoundaries() {
+        List<Object> boundaries = new ArrayList<>();
+        boundaries.add(new Decimal128(BigDecimal.ZERO));
+        priceBuckets.forEach(bound -> boundaries.add(new Decimal128(bound)));
+        return boundaries.toArray();
+    }
+
+    private List<CategoryFacet> categoryFacets(Document facetResult) {
+        if (facetResult == null) {
+            return List.of();
+        }
+        return facetResult.getList("categories", Document.class).stream()
+                .filter(bucket -> bucket.get("_id") != null)
+                .map(bucket -> new CategoryFacet(ProductCategory.valueOf(bucket.getString("_id")), bucket.get("count", Number.class).longValue()))
+                .sorted(Comparator.comparing(CategoryFacet::category))
+                .toList();
+    }
+
+    private List<PriceBucketFacet> priceFacets(Document facetResult) {
+        if (facetResult == null) {
+            return List.of();
+        }
+        Map<Object, Long> counts = new HashMap<>();
+        facetResult.getList("prices", Document.class).forEach(bucket -> counts.put(bucket.get("_id"), bucket.get("count", Number.class).longValue()));
+
+        List<PriceBucketFacet> facets = new ArrayList<>();
+        BigDecimal from = BigDecimal.ZERO;
+        for (BigDecimal to : priceBuckets) {
+            facets.add(new PriceBucketFacet(from, to, counts.getOrDefault(new Decimal128(from), 0L)));
+            from = to;
+        }
+        facets.add(new PriceBucketFacet(from, null, counts.getOrDefault("other", 0L)));
+        return facets;
+    }
+}
@@ -0,0 +1,243 @@
+package com.ms.product_service.service;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.ms.product_service.dto.*;
+import com.ms.product_service.events.ProductEventProducer;
+import com.ms.product_service.exception.UnauthorizedException;
+import com.ms.product_service.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+@Service
+@Slf4j
+public class ProductImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductCacheService productCacheService;
+    private final ProductEventProducer productEventProducer;
+    private final CategoryStatsService categoryStatsService;
+    private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = CsvMapper.builder().enable(CsvParser.Feature.SKIP_EMPTY_LINES).build();
+
+    @Value("${product.import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Autowired
+    public ProductImportService(MongoTemplate mongoTemplate, ProductCacheService productCacheService, ProductEventProducer productEventProducer, CategoryStatsService categoryStatsService, CacheManager cacheManager, ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.productCacheService = productCacheService;
+        this.productEventProducer = productEventProducer;
+        this.categoryStatsService = categoryStatsService;
+        this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Creates products from newline-delimited JSON or CSV (with a header row), validating each row as it
+     * is read and inserting the valid ones in unordered bulk writes of chunk-size rows. JSON rows are
+     * numbered by line, CSV rows by record with the header as row 1, since quoted values may span lines.
+     */
+    public ProductImportReport importProducts(InputStream inputStream, String contentType, String role) throws IOException {
+        if(!role.equals("ADMIN")) {
+            throw new UnauthorizedException("Unauthorized to perform this action");
+        }
+        boolean csv = contentType != null && contentType.toLowerCase().startsWith("text/csv");
+        long start = System.nanoTime();
+
+        ImportState state = new ImportState();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            if(csv) {
+                readCsv(reader, state);
+            } else {
+                readJson(reader, state);
+            }
+            writeChunk(state);
+        } finally {
+            // chunks written before a failure stay imported, the lists cached without them must go as well
+            evictCaches(state.categories);
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        double rowsPerSecond = elapsedMillis == 0 ? state.rows : state.rows * 1000.0 / elapsedMillis;
+        log.info("imported {} out of {} products in {} ms", state.imported, state.rows, elapsedMillis);
+        return new ProductImportReport(state.rows, state.imported, state.failed, state.errors, elapsedMillis, rowsPerSecond);
+    }
+
+    private void readJson(BufferedReader reader, ImportState state) throws IOException {
+        String line;
+        long lineNumber = 0;
+        while((line = reader.readLine()) != null) {
+            lineNumber++;
+            if(!line.isBlank()) {
+                String json = line;
+                addRow(state, lineNumber, () -> objectMapper.readValue(json, ProductRequest.class));
+            }
+        }
+    }
+
+    private void readCsv(BufferedReader reader, ImportState state) throws IOException {
+        CsvSchema schema = CsvSchema.emptySchema().withHeader();
+        try(MappingIterator<Map<String, String>> records = csvMapper.readerForMapOf(String.class).with(schema).readValues(reader)) {
+            long row = 1;
+            try {
+                // reading ahead parses the header
+                boolean more = records.hasNextValue();
+                checkHeader(((CsvParser) records.getParser()).getSchema());
+                while(more) {
+                    Map<String, String> record = records.nextValue();
+                    addRow(state, ++row, () -> parseCsvRow(record));
+                    more = records.hasNextValue();
+                }
+            } catch(JacksonException e) {
+                // past a broken quote there is no telling where the next record starts
+                state.rows++;
+                state.fail(row + 1, e.getOriginalMessage());
+            }
+        }
+    }
+
+    private void addRow(ImportState state, long row, Callable<ProductRequest> parser) {
+        state.rows++;
+        try {
+            state.chunk.add(toProduct(parser.call()));
+            state.chunkRows.add(row);
+        } catch(Exception e) {
+            state.fail(row, e.getMessage());
+        }
+
+        if(state.chunk.size() >= chunkSize) {
+            writeChunk(state);
+        }
+    }
+
+    private void writeChunk(ImportState state) {
+        if(state.chunk.isEmpty()) {
+            return;
+        }
+        // recorded up front, a write that fails halfway may still have inserted some of the chunk
+        state.chunk.forEach(product -> state.categories.add(product.getCategory()));
+        Set<Integer> failedIndexes = new HashSet<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        bulk.insert(state.chunk);
+        try {
+            bulk.execute();
+        } catch(BulkOperationException e) {
+            e.getErrors().forEach(error -> {
+                failedIndexes.add(error.getIndex());
+                state.fail(state.chunkRows.get(error.getIndex()), error.getMessage());
+            });
+        }
+
+        List<Product> inserted = new ArrayList<>();
+        List<ProductResponse> created = new ArrayList<>();
+        for(int i = 0; i < state.chunk.size(); i++) {
+            if(!failedIndexes.contains(i)) {
+                Product product = state.chunk.get(i);
+                inserted.add(product);
+                created.add(productCacheService.mapProductToResponse(product));
+            }
+        }
+        state.imported += created.size();
+        categoryStatsService.productsAdded(inserted);
+        productEventProducer.createdProducts(created);
+
+        state.chunk.clear();
+        state.chunkRows.clear();
+    }
+
+    // each affected list is evicted once for the whole import
+    private void evictCaches(Set<ProductCategory> categories) {
+        Objects.requireNonNull(cacheManager.getCache("product-ids")).evict("all");
+        Objects.requireNonNull(cacheManager.getCache("product-page")).clear();
+        Objects.requireNonNull(cacheManager.getCache("product-filter")).clear();
+        categories.forEach(category -> Objects.requireNonNull(cacheManager.getCache("product-ids")).evict(category.name()));
+    }
+
+    private Product toProduct(ProductRequest request) {
+        if(request.name() == null || request.name().isBlank()) {
+            throw new IllegalArgumentException("Product name is required");
+        }
+        if(request.price() == null || request.price().signum() < 0) {
+            throw new IllegalArgumentException("Product price must be zero or positive");
+        }
+        if(request.amount() < 0) {
+            throw new IllegalArgumentException("Product amount must be zero or positive");
+        }
+        Product product = new Product(request.name(), request.description(), request.price(), ProductCategory.fromString(request.category()), request.amount());
+        // ids are assigned up front since bulk inserts do not write them back to the entities
+        product.setId(new ObjectId().toHexString());
+        product.setVersion(1);
+        return product;
+    }
+
+    private void checkHeader(CsvSchema header) {
+        // an empty body has no header to check
+        if(header.size() == 0) {
+            return;
+        }
+        Set<String> columns = new HashSet<>();
+        header.forEach(column -> columns.add(column.getName().trim().toLowerCase()));
+        for(String column: List.of("name", "price", "category", "amount")) {
+            if(!columns.contains(column)) {
+                throw new IllegalArgumentException("CSV header is missing column: " + column);
+            }
+        }
+    }
+
+    private ProductRequest parseCsvRow(Map<String, String> record) {
+        Map<String, String> fields = new HashMap<>();
+        record.forEach((column, value) -> fields.put(column.trim().toLowerCase(), value));
+        return new ProductRequest(field(fields, "name"), fields.containsKey("description") ? field(fields, "description") : null,
+                new BigDecimal(field(fields, "price")), field(fields, "category"),
+                Integer.parseInt(field(fields, "amount")));
+    }
+
+    private String field(Map<String, String> fields, String column) {
+        String value = fields.get(column);
+        if(value == null) {
+            throw new IllegalArgumentException("Missing value for column: " + column);
+        }
+        return value.trim();
+    }
+
+    private static class ImportState {
+        private final List<Product> chunk = new ArrayList<>();
+        private final List<Long> chunkRows = new ArrayList<>();
+        private final Set<ProductCategory> categories = EnumSet.noneOf(ProductCategory.class);
+        private final List<ImportError> errors = new ArrayList<>();
+        private long rows;
+        private long imported;
+        private long failed;
+
+        private void fail(long row, String message) {
+            failed++;
+            if(errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportError(row, message));
+            }
+        }
+    }
+}
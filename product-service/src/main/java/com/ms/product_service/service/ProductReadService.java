@@ -0,0 +1,184 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.cache.ReactiveTwoLevelCache;
+import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.dto.ProductPage;
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.exception.ResourceNotFoundException;
+import com.ms.product_service.model.Product;
+import com.ms.product_service.model.StockStripe;
+import com.ms.product_service.repository.ReactiveProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Non-blocking counterpart of the catalog reads of {@link ProductCacheService} and {@link ProductService}, sharing
+ * their cache entries. With 'product.reads.reactive' off every read runs the blocking version instead, on the
+ * request thread.
+ */
+@Service
+@Slf4j
+public class ProductReadService {
+
+    private final ReactiveProductRepository productRepository;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ReactiveTwoLevelCache cache;
+    private final ProductCacheService productCacheService;
+    private final ProductService productService;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    @Value("${product.reads.reactive:true}")
+    private boolean reactive;
+
+    @Autowired
+    public ProductReadService(ReactiveProductRepository productRepository, ReactiveMongoTemplate mongoTemplate, ReactiveTwoLevelCache cache, ProductCacheService productCacheService, ProductService productService) {
+        this.productRepository = productRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.cache = cache;
+        this.productCacheService = productCacheService;
+        this.productService = productService;
+    }
+
+    public Mono<List<ProductResponse>> getProducts() {
+        if(!reactive) {
+            return Mono.fromCallable(productCacheService::getProducts);
+        }
+        return cache.<List<String>>get("product-ids", "all", () -> {
+            log.info("getProductIds called -- accessing database");
+            return productRepository.findAll().map(Product::getId).collectList();
+        }).flatMap(this::getProductsByIds);
+    }
+
+    public Mono<ProductResponse> getProductById(String id) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productCacheService.getProductById(id));
+        }
+        return cache.get("product", id, () -> {
+                    log.info("getProductById called -- accessing database");
+                    return productRepository.findById(id).flatMap(this::mapProductToResponse);
+                })
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product not found with ID: " + id)));
+    }
+
+    public Mono<List<ProductResponse>> getProductByCategory(String category) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productCacheService.getProductByCategory(category));
+        }
+        ProductCategory productCategory = ProductCategory.fromString(category);
+        return cache.<List<String>>get("product-ids", category.toUpperCase(), () -> {
+            log.info("getProductIds called -- accessing database");
+            return productRepository.findByCategory(productCategory).map(Product::getId).collectList();
+        }).flatMap(this::getProductsByIds);
+    }
+
+    public Mono<BigDecimal> getPrice(String id) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productCacheService.getPrice(id));
+        }
+        return cache.get("product-price", id, () -> {
+                    log.info("getPrice called -- accessing database");
+                    return productRepository.findById(id).map(Product::getPrice);
+                })
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product not found with ID: " + id)));
+    }
+
+    public Mono<String> getName(String id) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productCacheService.getName(id));
+        }
+        return cache.get("product-name", id, () -> {
+                    log.info("getName called -- accessing database");
+                    return productRepository.findById(id).map(Product::getName);
+                })
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product not found with ID: " + id)));
+    }
+
+    public Mono<ProductPage> getProductPage(String category, String after, int size) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productService.getProductPage(category, after, size));
+        }
+        int pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        String pageCategory = category == null ? "" : category.toUpperCase();
+        String pageAfter = after == null ? "" : after;
+        return getProductPageIds(pageCategory, pageAfter, pageSize)
+                .flatMap(ids -> getProductsByIds(ids)
+                        .map(products -> new ProductPage(products, ids.size() == pageSize ? ids.getLast() : null)));
+    }
+
+    public Mono<Boolean> isAvailable(String id, int amount) {
+        if(!reactive) {
+            return Mono.fromCallable(() -> productService.isAvailable(id, amount));
+        }
+        return productRepository.findById(id)
+                .flatMap(product -> amountOf(product).map(available -> available >= amount))
+                .defaultIfEmpty(false);
+    }
+
+    private Mono<List<String>> getProductPageIds(String category, String after, int size) {
+        return cache.get("product-page", category + ":" + after + ":" + size, () -> {
+            log.info("getProductPageIds called -- accessing database");
+            Pageable pageable = PageRequest.of(0, size, Sort.by("id"));
+            Flux<Product> products;
+            if(category.isEmpty()) {
+                products = after.isEmpty() ? productRepository.findAllBy(pageable) : productRepository.findByIdGreaterThan(after, pageable);
+            } else {
+                ProductCategory productCategory = ProductCategory.fromString(category);
+                products = after.isEmpty() ? productRepository.findByCategory(productCategory, pageable)
+                        : productRepository.findByCategoryAndIdGreaterThan(productCategory, after, pageable);
+            }
+            return products.map(Product::getId).collectList();
+        });
+    }
+
+    // cached products first, the missing ones with a single query; ids of products that no longer exist are skipped
+    private Mono<List<ProductResponse>> getProductsByIds(List<String> ids) {
+        return cache.getAll("product", ids).flatMap(cached -> {
+            Map<String, ProductResponse> found = new HashMap<>();
+            cached.forEach((id, product) -> {
+                if(product instanceof ProductResponse response) {
+                    found.put((String) id, response);
+                }
+            });
+
+            List<String> missing = ids.stream().filter(id -> !found.containsKey(id)).distinct().toList();
+            if(missing.isEmpty()) {
+                return Mono.just(ids.stream().map(found::get).toList());
+            }
+            log.info("getProductsByIds called -- accessing database for {} products", missing.size());
+            return productRepository.findAllById(missing)
+                    .concatMap(this::mapProductToResponse)
+                    .concatMap(response -> cache.put("product", response.productId(), response).thenReturn(response))
+                    .doOnNext(response -> found.put(response.productId(), response))
+                    .then(Mono.fromSupplier(() -> ids.stream().map(found::get).filter(Objects::nonNull).toList()));
+        });
+    }
+
+    private Mono<ProductResponse> mapProductToResponse(Product product) {
+        return amountOf(product).map(amount -> new ProductResponse(product.getId(), product.getName(), product.getPrice(), amount, product.getCategory(), product.getVersion()));
+    }
+
+    // the stock of a striped product is the sum of its stripes
+    private Mono<Integer> amountOf(Product product) {
+        if(product.getStripes() == 0) {
+            return Mono.just(product.getAmount());
+        }
+        List<String> ids = IntStream.range(0, product.getStripes()).mapToObj(stripe -> StockStripe.idOf(product.getId(), stripe)).toList();
+        return mongoTemplate.find(new Query(Criteria.where("id").in(ids)), StockStripe.class)
+                .map(StockStripe::getAmount)
+                .reduce(0, Integer::sum);
+    }
+}
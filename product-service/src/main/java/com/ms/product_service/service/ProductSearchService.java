@@ -0,0 +1,112 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.model.Product;
+import com.ms.product_service.repository.ProductRepository;
+import com.ms.product_service.search.ProductSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Serves product searches from an in-process index. The index is filled from Mongo once the application is
+ * ready and then follows the product events of every replica: deleted products are dropped right away, created
+ * and updated ones are re-read from Mongo in batches, so a product whose stock changes many times a second
+ * is read once per flush.
+ */
+@Service
+@Slf4j
+public class ProductSearchService {
+
+    private static final int MAX_RESULTS = 100;
+
+    private final ProductRepository productRepository;
+    private final ProductCacheService productCacheService;
+    private final ProductSearchIndex searchIndex;
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    // ids indexed or removed while the initial build streams the catalog, whose older copies may overwrite them
+    private Set<String> touchedDuringBuild;
+
+    @Autowired
+    public ProductSearchService(ProductRepository productRepository, ProductCacheService productCacheService,
+                                @Value("${product.search.max-edits:2}") int maxEdits) {
+        this.productRepository = productRepository;
+        this.productCacheService = productCacheService;
+        this.searchIndex = new ProductSearchIndex(maxEdits);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        synchronized (this) {
+            touchedDuringBuild = new HashSet<>();
+        }
+        Thread.startVirtualThread(() -> {
+            long start = System.currentTimeMillis();
+            try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+                products.forEach(this::index);
+            } catch (Exception e) {
+                log.error("failed to build the product search index", e);
+                return;
+            } finally {
+                // re-read from Mongo on the next flush, which drops ghosts of deleted products and stale overwrites
+                synchronized (this) {
+                    changed.addAll(touchedDuringBuild);
+                    touchedDuringBuild = null;
+                }
+            }
+            log.info("indexed {} products for search in {} ms", searchIndex.size(), System.currentTimeMillis() - start);
+        });
+    }
+
+    public List<ProductResponse> search(String query, String category, int limit) {
+        String categoryName = category == null ? null : ProductCategory.fromString(category).name();
+        List<String> ids = searchIndex.search(query, categoryName, Math.clamp(limit, 1, MAX_RESULTS));
+        return productCacheService.getProductsByIds(ids);
+    }
+
+    public void productChanged(String productId) {
+        changed.add(productId);
+    }
+
+    public void productDeleted(String productId) {
+        changed.remove(productId);
+        searchIndex.remove(productId);
+        touched(List.of(productId));
+    }
+
+    @Scheduled(fixedDelayString = "${product.search.refresh-interval-ms:1000}")
+    public void indexChanges() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> productIds = new ArrayList<>(changed);
+        changed.removeAll(productIds);
+        touched(productIds);
+
+        Set<String> missing = new HashSet<>(productIds);
+        for (Product product : productRepository.findAllById(productIds)) {
+            index(product);
+            missing.remove(product.getId());
+        }
+        missing.forEach(searchIndex::remove);
+    }
+
+    private synchronized void touched(Collection<String> productIds) {
+        if (touchedDuringBuild != null) {
+            touchedDuringBuild.addAll(productIds);
+        }
+    }
+
+    private void index(Product product) {
+        searchIndex.index(product.getId(), product.getName(), product.getDescription(), product.getCategory() == null ? null : product.getCategory().name());
+    }
+}
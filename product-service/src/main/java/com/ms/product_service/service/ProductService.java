@@ -1,42 +1,62 @@
 package com.ms.product_service.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ms.product_service.dto.*;
 import com.ms.product_service.events.ProductEventProducer;
 import com.ms.product_service.exception.ResourceNotFoundException;
 import com.ms.product_service.exception.UnauthorizedException;
 import com.ms.product_service.model.Product;
+import com.ms.product_service.model.StockHold;
 import com.ms.product_service.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Caching;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Slf4j
 public class ProductService {
 
     private final ProductRepository productRepository;
     private final ProductCacheService productCacheService;
     private final ProductEventProducer productEventProducer;
+    private final StockReservationService stockReservationService;
+    private final StripedStockService stripedStockService;
+    private final StockHoldService stockHoldService;
+    private final CategoryStatsService categoryStatsService;
     private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_STRIPES = 64;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, ProductCacheService productCacheService, ProductEventProducer productEventProducer, CacheManager cacheManager) {
+    public ProductService(ProductRepository productRepository, ProductCacheService productCacheService, ProductEventProducer productEventProducer, StockReservationService stockReservationService, StripedStockService stripedStockService, StockHoldService stockHoldService, CategoryStatsService categoryStatsService, CacheManager cacheManager, ObjectMapper objectMapper) {
         this.productRepository = productRepository;
         this.productCacheService = productCacheService;
         this.productEventProducer = productEventProducer;
+        this.stockReservationService = stockReservationService;
+        this.stripedStockService = stripedStockService;
+        this.stockHoldService = stockHoldService;
+        this.categoryStatsService = categoryStatsService;
         this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
     }
 
     @Transactional
-    @Caching(evict = {@CacheEvict(value = "product", key = "'all'")})
+    @Caching(evict = {@CacheEvict(value = "product-ids", key = "'all'"),
+            @CacheEvict(value = "product-page", allEntries = true),
+            @CacheEvict(value = "product-filter", allEntries = true)})
     public ProductResponse addProduct(ProductRequest productRequest, String role) {
         if(!role.equals("ADMIN")) {
             throw new UnauthorizedException("Unauthorized to perform this action");
@@ -50,9 +70,12 @@ public class ProductService {
         product.setCategory(category);
         product.setAmount(productRequest.amount());
 
-        Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(productRequest.category().toUpperCase());
+        Objects.requireNonNull(cacheManager.getCache("product-ids")).evict(productRequest.category().toUpperCase());
 
-        ProductResponse response = productCacheService.mapProductToResponse(productRepository.save(product));
+        Product saved = productRepository.save(product);
+        categoryStatsService.productsAdded(List.of(saved));
+
+        ProductResponse response = productCacheService.mapProductToResponse(saved);
         productEventProducer.createdProduct(response);
         return response;
     }
@@ -60,9 +83,11 @@ public class ProductService {
     @Transactional
     @Caching(
             evict = {@CacheEvict(value = "product", key = "#id"),
-            @CacheEvict(value = "product", key = "'all'"),
+            @CacheEvict(value = "product-ids", key = "'all'"),
             @CacheEvict(value = "product-price", key = "#id"),
-            @CacheEvict(value = "product-name", key = "#id")}
+            @CacheEvict(value = "product-name", key = "#id"),
+            @CacheEvict(value = "product-page", allEntries = true),
+            @CacheEvict(value = "product-filter", allEntries = true)}
     )
     public void deleteProduct(String id, String role) {
         if(!role.equals("ADMIN")) {
@@ -71,18 +96,18 @@ public class ProductService {
         Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product not found"));
 
         String productCategory = product.getCategory().name();
-        Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(productCategory.toUpperCase());
+        Objects.requireNonNull(cacheManager.getCache("product-ids")).evict(productCategory.toUpperCase());
+        int amount = stripedStockService.getAmount(product);
         productRepository.deleteById(id);
+        if(product.getStripes() > 0) {
+            stripedStockService.deleteStripes(id);
+        }
+        categoryStatsService.productRemoved(product, amount);
         productEventProducer.deletedProduct(productCacheService.mapProductToResponse(product));
     }
 
     @Transactional
-    @Caching(
-            evict = {@CacheEvict(value = "product", key = "#id"),
-            @CacheEvict(value = "product", key = "'all'"),
-            @CacheEvict(value = "product-price", key = "#id"),
-            @CacheEvict(value = "product-name", key = "#id")}
-    )
+    @CacheEvict(value = "product-filter", allEntries = true)
     public ProductResponse updateProduct(String id, ProductRequest productRequest, String role) {
         if(!role.equals("ADMIN")) {
             throw new UnauthorizedException("Unauthorized to perform this action");
@@ -90,7 +115,10 @@ public class ProductService {
 
         Product updatedProduct = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product not found with ID:" + id));
 
-        String productCategory = updatedProduct.getCategory().name();
+        ProductCategory previousCategory = updatedProduct.getCategory();
+        BigDecimal previousPrice = updatedProduct.getPrice();
+        int previousAmount = stripedStockService.getAmount(updatedProduct);
+        String productCategory = previousCategory.name();
 
         updatedProduct.setName(productRequest.name());
         updatedProduct.setDescription(productRequest.description());
@@ -98,89 +126,287 @@ public class ProductService {
 
         ProductCategory category = ProductCategory.fromString(productRequest.category());
         updatedProduct.setCategory(category);
-        updatedProduct.setAmount(productRequest.amount());
+        if(updatedProduct.getStripes() > 0) {
+            stripedStockService.setAmount(updatedProduct, productRequest.amount());
+        } else {
+            updatedProduct.setAmount(productRequest.amount());
+        }
         productRepository.save(updatedProduct);
+        categoryStatsService.productUpdated(previousCategory, previousPrice, previousAmount, updatedProduct, productRequest.amount());
 
         ProductResponse response = productCacheService.mapProductToResponse(updatedProduct);
-        productEventProducer.updatedProduct(response);
+        productCacheService.refresh(List.of(response));
 
-        Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(productCategory.toUpperCase());
+        ProductListChange listChange = ProductListChange.NONE;
+        if(!productCategory.equals(category.name())) {
+            Objects.requireNonNull(cacheManager.getCache("product-ids")).evict(productCategory);
+            Objects.requireNonNull(cacheManager.getCache("product-ids")).evict(category.name());
+            Objects.requireNonNull(cacheManager.getCache("product-page")).clear();
+            listChange = ProductListChange.MEMBERSHIP;
+        } else if(previousPrice.compareTo(productRequest.price()) != 0 || (previousAmount > 0) != (productRequest.amount() > 0)) {
+            listChange = ProductListChange.FILTER;
+        }
 
-        if(!productCategory.equalsIgnoreCase(productRequest.category())) {
-            Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(updatedProduct.getCategory().name().toUpperCase());
+        productEventProducer.updatedProduct(response, listChange);
+        return response;
+    }
+
+    @CacheEvict(value = "product-filter", allEntries = true)
+    public ProductResponse setStockStripes(String id, int stripes, String role) {
+        if(!role.equals("ADMIN")) {
+            throw new UnauthorizedException("Unauthorized to perform this action");
+        }
+        if(!productRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Product not found with ID:" + id);
         }
+        stripedStockService.setStripes(id, Math.clamp(stripes, 0, MAX_STRIPES));
 
+        Product product = productRepository.findById(id).orElseThrow(() -> new ResourceNotFoundException("Product not found with ID:" + id));
+        ProductResponse response = productCacheService.mapProductToResponse(product);
+        productCacheService.refresh(List.of(response));
+        // re-striping keeps the amount, so no list changes
+        productEventProducer.updatedProduct(response, ProductListChange.NONE);
         return response;
     }
 
 
-    @Transactional
-    @Caching(
-            evict = {@CacheEvict(value = "product", key = "#orderDTO.order().getFirst().productId()"),
-                    @CacheEvict(value = "product", key = "'all'")}
-    )
     public void recoverStock(OrderDTO orderDTO){
-        for(OrderProduct orderProduct: orderDTO.order()){
-            Optional<Product> optionalProduct = productRepository.findById(orderProduct.productId());
-            if(optionalProduct.isPresent()) {
-                Product product = optionalProduct.get();
+        String orderId = orderDTO.order().getFirst().id();
+        if(orderId != null) {
+            StockHold hold = stockHoldService.recover(orderId);
+            if(hold != null) {
+                returnHeldStock(hold);
+                return;
+            }
+            if(stockHoldService.exists(orderId)) {
+                // the hold was released already, by its payment failing or by expiring
+                return;
+            }
+        }
+        stockReservationService.release(orderDTO.order());
+        publishStockChanges(amountsOf(orderDTO.order(), 1));
+    }
 
-                String productCategory = product.getCategory().name();
-                Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(productCategory.toUpperCase());
+    public void confirmHold(String orderId) {
+        if(!stockHoldService.confirm(orderId)) {
+            log.warn("no stock held for order {} to confirm", orderId);
+        }
+    }
 
-                product.setAmount(product.getAmount() + orderProduct.amount());
-                productRepository.save(product);
-                productEventProducer.updatedProduct(productCacheService.mapProductToResponse(product));
-            }
+    public void releaseHold(String orderId) {
+        StockHold hold = stockHoldService.release(orderId);
+        if(hold != null) {
+            returnHeldStock(hold);
         }
     }
 
+    @Scheduled(fixedRateString = "${product.stock.hold.tick-ms:1000}")
+    public void expireHolds() {
+        stockHoldService.expireDue().forEach(this::returnExpiredStock);
+    }
+
+    @Scheduled(fixedDelayString = "${product.stock.hold.sweep-interval-ms:60000}")
+    public void expireStaleHolds() {
+        stockHoldService.expireStale().forEach(this::returnExpiredStock);
+    }
+
+    private void returnExpiredStock(StockHold hold) {
+        returnHeldStock(hold);
+        productEventProducer.expiredHold(hold.getOrderId());
+    }
+
+    private void returnHeldStock(StockHold hold) {
+        log.info("returning stock held for order {}", hold.getOrderId());
+        stockReservationService.release(hold.getAmounts());
+        publishStockChanges(hold.getAmounts());
+    }
+
     public void checkOrder(OrderDTO orderDTO) {
         if(orderDTO.order() == null || orderDTO.order().isEmpty()) {
             throw new ResourceNotFoundException("Order not found");
         }
-        List<String> unavailable = new ArrayList<>();
-        List<OrderProduct> pricedOrderProducts = new ArrayList<>();
         String orderId = orderDTO.order().getFirst().id();
         String email = orderDTO.order().getFirst().email();
-        for(OrderProduct orderProduct: orderDTO.order()){
-            if(!isAvailable(orderProduct.productId(), orderProduct.amount())) {
-                unavailable.add(orderProduct.productName());
-            } else if(unavailable.isEmpty()) {
-                BigDecimal price = productCacheService.getPrice(orderProduct.productId());
-                OrderProduct pricedProduct = new OrderProduct(orderId, email, orderProduct.productId(), orderProduct.productName(), price, orderProduct.amount());
-                pricedOrderProducts.add(pricedProduct);
-            }
+        if(orderId != null && stockHoldService.exists(orderId)) {
+            log.info("order {} was checked already", orderId);
+            return;
         }
 
-        if(!unavailable.isEmpty()){
+        List<String> unavailableIds = stockReservationService.reserve(orderDTO.order());
+        if(!unavailableIds.isEmpty()){
+            List<String> unavailable = orderDTO.order().stream()
+                    .filter(orderProduct -> unavailableIds.contains(orderProduct.productId()))
+                    .map(OrderProduct::productName)
+                    .toList();
             productEventProducer.rejectedOrder(new RejectOrderDTO(orderId, email, unavailable));
-        } else {
-            deductProduct(orderDTO);
-            productEventProducer.acceptedOrder(new OrderDTO(pricedOrderProducts));
+            return;
+        }
+
+        stockHoldService.hold(Collections.singletonMap(orderId, orderDTO.order()));
+        Map<String, Product> products = publishStockChanges(amountsOf(orderDTO.order(), -1));
+        productEventProducer.acceptedOrder(priceOrder(orderDTO, products));
+    }
+
+    public void checkOrders(List<OrderDTO> orders) {
+        List<OrderDTO> received = orders.stream().filter(orderDTO -> orderDTO.order() != null && !orderDTO.order().isEmpty()).toList();
+        Set<String> orderIds = received.stream().map(orderDTO -> orderDTO.order().getFirst().id()).filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<String> checked = orderIds.isEmpty() ? Set.of() : stockHoldService.findExisting(orderIds);
+
+        // a redelivered order already holds its stock; one lost before its acceptance was sent fails when the hold expires
+        Set<String> seen = new HashSet<>();
+        List<OrderDTO> validOrders = received.stream().filter(orderDTO -> {
+            String orderId = orderDTO.order().getFirst().id();
+            if(orderId != null && (checked.contains(orderId) || !seen.add(orderId))) {
+                log.info("order {} was checked already", orderId);
+                return false;
+            }
+            return true;
+        }).toList();
+        if(validOrders.isEmpty()) {
+            return;
+        }
+
+        Set<String> productIds = validOrders.stream()
+                .flatMap(orderDTO -> orderDTO.order().stream())
+                .map(OrderProduct::productId)
+                .collect(Collectors.toSet());
+        Map<String, Integer> stock = new HashMap<>();
+        productRepository.findAllById(productIds).forEach(product -> stock.put(product.getId(), stripedStockService.getAmount(product)));
+
+        // orders are settled in arrival order against the stock read for the whole batch
+        List<OrderDTO> acceptedOrders = new ArrayList<>();
+        for(OrderDTO orderDTO: validOrders){
+            Map<String, Integer> amounts = orderDTO.order().stream()
+                    .collect(Collectors.toMap(OrderProduct::productId, OrderProduct::amount, Integer::sum));
+            List<String> unavailable = orderDTO.order().stream()
+                    .filter(orderProduct -> stock.getOrDefault(orderProduct.productId(), -1) < amounts.get(orderProduct.productId()))
+                    .map(OrderProduct::productName)
+                    .toList();
+
+            if(unavailable.isEmpty()) {
+                amounts.forEach((productId, amount) -> stock.merge(productId, -amount, Integer::sum));
+                acceptedOrders.add(orderDTO);
+            } else {
+                OrderProduct first = orderDTO.order().getFirst();
+                productEventProducer.rejectedOrder(new RejectOrderDTO(first.id(), first.email(), unavailable));
+            }
+        }
+        if(acceptedOrders.isEmpty()) {
+            return;
+        }
+
+        // one net deduction per product for the whole batch
+        List<OrderProduct> lines = acceptedOrders.stream().flatMap(orderDTO -> orderDTO.order().stream()).toList();
+        if(!stockReservationService.reserve(lines).isEmpty()) {
+            // stock changed between the read and the write, settle the orders one by one instead
+            acceptedOrders.forEach(this::checkOrder);
+            return;
+        }
+
+        Map<String, List<OrderProduct>> holds = new LinkedHashMap<>();
+        acceptedOrders.forEach(orderDTO -> holds.put(orderDTO.order().getFirst().id(), orderDTO.order()));
+        stockHoldService.hold(holds);
+
+        Map<String, Product> products = publishStockChanges(amountsOf(lines, -1));
+        acceptedOrders.forEach(orderDTO -> productEventProducer.acceptedOrder(priceOrder(orderDTO, products)));
+    }
+
+    private OrderDTO priceOrder(OrderDTO orderDTO, Map<String, Product> products) {
+        String orderId = orderDTO.order().getFirst().id();
+        String email = orderDTO.order().getFirst().email();
+        List<OrderProduct> pricedOrderProducts = new ArrayList<>();
+        for(OrderProduct orderProduct: orderDTO.order()){
+            BigDecimal price = products.get(orderProduct.productId()).getPrice();
+            pricedOrderProducts.add(new OrderProduct(orderId, email, orderProduct.productId(), orderProduct.productName(), price, orderProduct.amount()));
         }
+        return new OrderDTO(pricedOrderProducts);
+    }
+
+    // the signed amount each product's stock moved by, sign -1 for deductions and 1 for returns
+    private Map<String, Integer> amountsOf(List<OrderProduct> order, int sign) {
+        return order.stream().collect(Collectors.toMap(OrderProduct::productId, orderProduct -> sign * orderProduct.amount(), Integer::sum));
+    }
 
+    private Map<String, Product> publishStockChanges(Map<String, Integer> moved) {
+        Map<String, Product> products = new HashMap<>();
+        List<ProductResponse> responses = new ArrayList<>();
+        for(Product product: productRepository.findAllById(moved.keySet())){
+            products.put(product.getId(), product);
+            responses.add(productCacheService.mapProductToResponse(product));
+        }
+        Set<String> stockStateChanged = productCacheService.refresh(responses);
+        categoryStatsService.stockChanged(responses, moved);
+        responses.forEach(response -> productEventProducer.updatedProduct(response,
+                stockStateChanged.contains(response.productId()) ? ProductListChange.FILTER : ProductListChange.NONE));
+        return products;
     }
 
-    private void deductProduct(OrderDTO orderDTO) {
-        for(OrderProduct products: orderDTO.order()){
-            Optional<Product> optionalProduct = productRepository.findById(products.productId());
-            if(optionalProduct.isPresent()) {
-                Product product  = optionalProduct.get();
+    public ProductPage getProductPage(String category, String after, int size) {
+        int pageSize = Math.clamp(size, 1, MAX_PAGE_SIZE);
+        List<String> ids = productCacheService.getProductPageIds(category == null ? "" : category.toUpperCase(), after == null ? "" : after, pageSize);
+        String nextCursor = ids.size() == pageSize ? ids.getLast() : null;
+        return new ProductPage(productCacheService.getProductsByIds(ids), nextCursor);
+    }
 
-                String productCategory = product.getCategory().name();
-                Objects.requireNonNull(cacheManager.getCache("product")).evict(product.getId());
-                Objects.requireNonNull(cacheManager.getCache("product-cat")).evict(productCategory.toUpperCase());
+    /**
+     * Filters the catalog by category, price range and stock, sorted by id or price. Pages are read after the
+     * cursor of the previous page and carry the category and price bucket counts of the whole filter.
+     */
+    public ProductFilterPage filterProducts(String category, BigDecimal minPrice, BigDecimal maxPrice, boolean inStock, String sort, String after, int size) {
+        ProductFilter filter = new ProductFilter(
+                category == null || category.isBlank() ? null : ProductCategory.fromString(category),
+                minPrice == null ? null : minPrice.stripTrailingZeros(),
+                maxPrice == null ? null : maxPrice.stripTrailingZeros(),
+                inStock,
+                sort == null || sort.isBlank() ? ProductSort.ID : ProductSort.fromString(sort),
+                after == null || after.isBlank() ? null : after,
+                Math.clamp(size, 1, MAX_PAGE_SIZE));
+        ProductFilterResult result = productCacheService.getFilterResult(filter);
+        return new ProductFilterPage(productCacheService.getProductsByIds(result.productIds()), result.nextCursor(),
+                result.categories(), result.priceBuckets());
+    }
 
-                product.setAmount(product.getAmount() - products.amount());
-                productRepository.save(product);
-                productEventProducer.updatedProduct(productCacheService.mapProductToResponse(product));
+    // writes one product per line straight from a database cursor
+    public void exportProducts(String category, OutputStream outputStream) throws IOException {
+        try(Stream<Product> products = category == null ? productRepository.streamAllByOrderByIdAsc()
+                : productRepository.streamByCategoryOrderByIdAsc(ProductCategory.fromString(category))) {
+            Iterator<Product> iterator = products.iterator();
+            while(iterator.hasNext()) {
+                outputStream.write(objectMapper.writeValueAsBytes(productCacheService.mapProductToResponse(iterator.next())));
+                outputStream.write('\n');
             }
         }
-        Objects.requireNonNull(cacheManager.getCache("product")).evict("all");
+        outputStream.flush();
+    }
+
+    /**
+     * Looks up several products at once, checking each against its required amount, 1 when none is given.
+     * Stock is read from the cached product views, which stock changes keep current.
+     */
+    public ProductBatchResponse getProductBatch(ProductBatchRequest request) {
+        List<ProductQuantity> quantities = request.products() == null ? List.of() : request.products();
+        Map<String, Integer> required = new LinkedHashMap<>();
+        quantities.stream()
+                .filter(quantity -> quantity.productId() != null)
+                .forEach(quantity -> required.merge(quantity.productId(), quantity.amount() == null ? 1 : quantity.amount(), Integer::sum));
+
+        Map<String, ProductResponse> products = productCacheService.getProductsByIds(new ArrayList<>(required.keySet())).stream()
+                .collect(Collectors.toMap(ProductResponse::productId, product -> product));
+
+        List<ProductAvailability> found = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        required.forEach((productId, amount) -> {
+            ProductResponse product = products.get(productId);
+            if(product == null) {
+                missing.add(productId);
+            } else {
+                found.add(new ProductAvailability(productId, product.productName(), product.productPrice(), product.amount(), product.amount() >= amount));
+            }
+        });
+        return new ProductBatchResponse(found, missing);
     }
 
     public boolean isAvailable(String id, int amount) {
-        return productRepository.existsByIdAndAmountIsGreaterThanEqual(id, amount);
+        return productRepository.findById(id).map(product -> stripedStockService.getAmount(product) >= amount).orElse(false);
     }
 }
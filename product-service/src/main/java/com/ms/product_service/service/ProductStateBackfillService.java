@@ -0,0 +1,78 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.events.ProductEventProducer;
+import com.ms.product_service.model.EventBackfill;
+import com.ms.product_service.model.Product;
+import com.ms.product_service.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Publishes every product to the compacted product-state topic once, so that the topic also holds the products
+ * that were created before it existed and consumers can rebuild their replicas from it alone. The backfill is
+ * recorded when it completes, replicas starting together before that may both publish, which compaction absorbs.
+ */
+@Service
+@Slf4j
+public class ProductStateBackfillService {
+
+    private static final String TOPIC = "product-state";
+    private static final int BATCH_SIZE = 500;
+
+    private final ProductRepository productRepository;
+    private final ProductCacheService productCacheService;
+    private final ProductEventProducer productEventProducer;
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ProductStateBackfillService(ProductRepository productRepository, ProductCacheService productCacheService, ProductEventProducer productEventProducer, MongoTemplate mongoTemplate) {
+        this.productRepository = productRepository;
+        this.productCacheService = productCacheService;
+        this.productEventProducer = productEventProducer;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        Thread.startVirtualThread(this::backfill);
+    }
+
+    public void backfill() {
+        if (mongoTemplate.findById(TOPIC, EventBackfill.class) != null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long published = 0;
+        List<ProductResponse> batch = new ArrayList<>();
+        // products are mapped right before they are sent, so a concurrent change rarely lands between the two
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                batch.add(productCacheService.mapProductToResponse(iterator.next()));
+                if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                    productEventProducer.productStates(batch);
+                    published += batch.size();
+                    batch.clear();
+                }
+            }
+        } catch (Exception e) {
+            log.error("failed to backfill the product-state topic after {} products", published, e);
+            return;
+        }
+
+        mongoTemplate.save(new EventBackfill(TOPIC, published, Instant.now()));
+        log.info("backfilled the product-state topic with {} products in {} ms", published, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,94 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.ProductResponse;
+import com.ms.product_service.model.Product;
+import com.ms.product_service.repository.ProductRepository;
+import com.ms.product_service.search.SuggestionTrie;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Autocompletes product names from a trie ranked by stock. Product events are applied to the live trie as they
+ * arrive, and the trie is periodically rebuilt from Mongo in the background and swapped in whole; the events
+ * received while a rebuild runs are replayed onto the new trie before the swap.
+ */
+@Service
+@Slf4j
+public class ProductSuggestService {
+
+    private final ProductRepository productRepository;
+    private final StripedStockService stripedStockService;
+    private final int topK;
+    private volatile SuggestionTrie trie;
+    private List<Consumer<SuggestionTrie>> pendingDuringRebuild;
+
+    @Autowired
+    public ProductSuggestService(ProductRepository productRepository, StripedStockService stripedStockService, @Value("${product.suggest.top-k:10}") int topK) {
+        this.productRepository = productRepository;
+        this.stripedStockService = stripedStockService;
+        this.topK = topK;
+        this.trie = new SuggestionTrie(topK);
+    }
+
+    public List<SuggestionTrie.Suggestion> suggest(String prefix, int limit) {
+        return trie.suggest(prefix, Math.clamp(limit, 1, topK));
+    }
+
+    public synchronized void productChanged(ProductResponse product) {
+        trie.put(product.productId(), product.productName(), product.amount());
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.add(rebuilt -> rebuilt.put(product.productId(), product.productName(), product.amount()));
+        }
+    }
+
+    public synchronized void productDeleted(String productId) {
+        trie.remove(productId);
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.add(rebuilt -> rebuilt.remove(productId));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread.startVirtualThread(this::rebuild);
+    }
+
+    @Scheduled(initialDelayString = "${product.suggest.rebuild-interval-ms:600000}", fixedDelayString = "${product.suggest.rebuild-interval-ms:600000}")
+    public void rebuild() {
+        synchronized (this) {
+            if (pendingDuringRebuild != null) {
+                return;
+            }
+            pendingDuringRebuild = new ArrayList<>();
+        }
+
+        long start = System.currentTimeMillis();
+        SuggestionTrie rebuilt = new SuggestionTrie(topK);
+        try (Stream<Product> products = productRepository.streamAllByOrderByIdAsc()) {
+            products.forEach(product -> rebuilt.put(product.getId(), product.getName(), stripedStockService.getAmount(product)));
+        } catch (Exception e) {
+            log.error("failed to rebuild the product suggestion trie", e);
+            synchronized (this) {
+                pendingDuringRebuild = null;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            pendingDuringRebuild.forEach(change -> change.accept(rebuilt));
+            pendingDuringRebuild = null;
+            trie = rebuilt;
+        }
+        log.info("rebuilt product suggestions for {} products in {} ms", rebuilt.size(), System.currentTimeMillis() - start);
+    }
+}
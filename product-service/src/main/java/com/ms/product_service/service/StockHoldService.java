@@ -0,0 +1,188 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.dto.OrderProduct;
+import com.ms.product_service.model.HoldStatus;
+import com.ms.product_service.model.StockHold;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Ledger of the stock held for accepted orders. A hold starts as HELD and is either confirmed once the payment
+ * succeeds or released when the payment fails, the order is recovered or the hold expires. Every transition is a
+ * single conditional update, so a hold is settled once no matter how many replicas or events race for it.
+ * Holds outlive the 30 minute checkout session, whose own expiry releases them first.
+ */
+@Service
+@Slf4j
+public class StockHoldService {
+
+    private final MongoTemplate mongoTemplate;
+    private final HoldExpiryWheel expiryWheel;
+    private final Duration ttl;
+    private final Counter heldCounter;
+    private final Counter confirmedCounter;
+    private final Counter releasedCounter;
+    private final Counter expiredCounter;
+    private final AtomicLong active = new AtomicLong();
+
+    @Autowired
+    public StockHoldService(MongoTemplate mongoTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${product.stock.hold.ttl:35m}") Duration ttl,
+                            @Value("${product.stock.hold.tick-ms:1000}") long tickMillis,
+                            @Value("${product.stock.hold.wheel-size:512}") int wheelSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.ttl = ttl;
+        this.expiryWheel = new HoldExpiryWheel(tickMillis, wheelSize);
+
+        this.heldCounter = holdCounter(meterRegistry, "held");
+        this.confirmedCounter = holdCounter(meterRegistry, "confirmed");
+        this.releasedCounter = holdCounter(meterRegistry, "released");
+        this.expiredCounter = holdCounter(meterRegistry, "expired");
+        Gauge.builder("product.stock.holds.pending", expiryWheel, HoldExpiryWheel::pending)
+                .description("Holds of this replica waiting to be confirmed, released or expired")
+                .register(meterRegistry);
+        Gauge.builder("product.stock.holds.active", active, AtomicLong::get)
+                .description("Holds in the ledger that are neither confirmed nor released, as of the last refresh")
+                .register(meterRegistry);
+
+        mongoTemplate.indexOps(StockHold.class).ensureIndex(new Index().on("status", Sort.Direction.ASC).on("expiresAt", Sort.Direction.ASC));
+    }
+
+    /**
+     * Records the stock reserved for each order, keyed by order id.
+     */
+    public void hold(Map<String, List<OrderProduct>> orders) {
+        Instant expiresAt = Instant.now().plus(ttl);
+        for (Map.Entry<String, List<OrderProduct>> order : orders.entrySet()) {
+            if (order.getKey() == null) {
+                continue;
+            }
+            Map<String, Integer> amounts = order.getValue().stream()
+                    .collect(Collectors.toMap(OrderProduct::productId, OrderProduct::amount, Integer::sum));
+            try {
+                mongoTemplate.insert(new StockHold(order.getKey(), amounts, HoldStatus.HELD, expiresAt, null));
+            } catch (DuplicateKeyException e) {
+                log.warn("order {} already holds stock", order.getKey());
+                continue;
+            }
+            expiryWheel.schedule(order.getKey(), expiresAt);
+            heldCounter.increment();
+        }
+    }
+
+    public boolean confirm(String orderId) {
+        boolean confirmed = settle(orderId, EnumSet.of(HoldStatus.HELD), HoldStatus.CONFIRMED, null) != null;
+        if (confirmed) {
+            confirmedCounter.increment();
+        }
+        return confirmed;
+    }
+
+    /**
+     * Releases a hold that was not confirmed yet. Returns the released hold, or null if there was none to release.
+     */
+    public StockHold release(String orderId) {
+        return countReleased(settle(orderId, EnumSet.of(HoldStatus.HELD), HoldStatus.RELEASED, null));
+    }
+
+    /**
+     * Releases a hold whether it was confirmed or not, for orders whose stock is given back after the payment.
+     */
+    public StockHold recover(String orderId) {
+        return countReleased(settle(orderId, EnumSet.of(HoldStatus.HELD, HoldStatus.CONFIRMED), HoldStatus.RELEASED, null));
+    }
+
+    public boolean exists(String orderId) {
+        return mongoTemplate.exists(new Query(Criteria.where("orderId").is(orderId)), StockHold.class);
+    }
+
+    /**
+     * Returns the given orders that hold stock or did, whatever the state of their hold.
+     */
+    public Set<String> findExisting(Collection<String> orderIds) {
+        Query query = new Query(Criteria.where("orderId").in(orderIds));
+        query.fields().include("orderId");
+        return mongoTemplate.find(query, StockHold.class).stream().map(StockHold::getOrderId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Releases the holds of this replica whose expiry time has passed.
+     */
+    public List<StockHold> expireDue() {
+        Instant now = Instant.now();
+        return expire(expiryWheel.advance(now), now);
+    }
+
+    /**
+     * Releases every expired hold of the ledger, including those scheduled by replicas that went away.
+     */
+    public List<StockHold> expireStale() {
+        Instant now = Instant.now();
+        Query query = new Query(Criteria.where("status").is(HoldStatus.HELD).and("expiresAt").lte(now)).limit(1000);
+        query.fields().include("orderId");
+        List<String> orderIds = mongoTemplate.find(query, StockHold.class).stream().map(StockHold::getOrderId).toList();
+        return expire(orderIds, now);
+    }
+
+    private List<StockHold> expire(List<String> orderIds, Instant now) {
+        List<StockHold> expired = new ArrayList<>();
+        for (String orderId : orderIds) {
+            StockHold hold = settle(orderId, EnumSet.of(HoldStatus.HELD), HoldStatus.RELEASED, now);
+            if (hold != null) {
+                expired.add(hold);
+                expiredCounter.increment();
+            }
+        }
+        return expired;
+    }
+
+    private StockHold settle(String orderId, Set<HoldStatus> from, HoldStatus to, Instant expiredBy) {
+        Criteria criteria = Criteria.where("orderId").is(orderId).and("status").in(from);
+        if (expiredBy != null) {
+            criteria.and("expiresAt").lte(expiredBy);
+        }
+        Update update = new Update().set("status", to).set("settledAt", Instant.now());
+        return mongoTemplate.findAndModify(new Query(criteria), update, FindAndModifyOptions.options().returnNew(true), StockHold.class);
+    }
+
+    private StockHold countReleased(StockHold hold) {
+        if (hold != null) {
+            releasedCounter.increment();
+        }
+        return hold;
+    }
+
+    // counted over the whole ledger, which the transitions of a single replica cannot tell, so scrapes read the last count
+    @Scheduled(fixedDelayString = "${product.stock.hold.active-refresh-ms:30000}")
+    public void refreshActive() {
+        active.set(mongoTemplate.count(new Query(Criteria.where("status").is(HoldStatus.HELD)), StockHold.class));
+    }
+
+    private static Counter holdCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("product.stock.holds")
+                .description("Stock holds by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
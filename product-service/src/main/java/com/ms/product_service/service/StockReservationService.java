@@ -0,0 +1,159 @@
+package com.ms.product_service.service;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.ms.product_service.dto.OrderProduct;
+import com.ms.product_service.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class StockReservationService {
+
+    // the server error code of a failed $toInt, raised by the guard of a short line
+    private static final int CONVERSION_FAILURE = 241;
+
+    private final MongoTemplate mongoTemplate;
+    private final StripedStockService stripedStockService;
+
+    @Autowired
+    public StockReservationService(MongoTemplate mongoTemplate, StripedStockService stripedStockService) {
+        this.mongoTemplate = mongoTemplate;
+        this.stripedStockService = stripedStockService;
+    }
+
+    /**
+     * Deducts the stock of every line of an order in a single bulk write, striped products
+     * excepted, which are taken from their stripes.
+     * Returns the ids of the products that could not be reserved, in which case
+     * the lines that were deducted are given back before returning.
+     */
+    public List<String> reserve(List<OrderProduct> order) {
+        Map<String, Integer> amounts = groupByProduct(order);
+        Set<String> unavailable = new LinkedHashSet<>();
+        Set<String> striped = new LinkedHashSet<>();
+
+        unavailable.addAll(updateUnstriped(amounts, -1, striped));
+        for (String productId : striped) {
+            if (!stripedStockService.reserve(productId, amounts.get(productId))) {
+                unavailable.add(productId);
+            }
+        }
+
+        if (!unavailable.isEmpty()) {
+            Map<String, Integer> reserved = new LinkedHashMap<>(amounts);
+            reserved.keySet().removeAll(unavailable);
+            log.info("rolling back reservation of {} products -- unavailable: {}", reserved.size(), unavailable);
+            restore(reserved);
+        }
+        return List.copyOf(unavailable);
+    }
+
+    /**
+     * Gives back the stock of every line of an order in a single bulk write.
+     */
+    public void release(List<OrderProduct> order) {
+        restore(groupByProduct(order));
+    }
+
+    public void release(Map<String, Integer> amounts) {
+        restore(amounts);
+    }
+
+    // striped products are left out by the filter and short lines fail with their own index, the lines that
+    // neither matched nor failed are told apart with a single read as striped or missing products
+    private Set<String> updateUnstriped(Map<String, Integer> amounts, int sign, Set<String> striped) {
+        Set<String> failed = new LinkedHashSet<>();
+        if (amounts.isEmpty()) {
+            return failed;
+        }
+        List<String> productIds = new ArrayList<>(amounts.keySet());
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        amounts.forEach((productId, amount) -> bulk.updateOne(unstripedById(productId), guardedUpdate(sign * amount)));
+
+        int matched;
+        try {
+            matched = bulk.execute().getMatchedCount();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCode() != CONVERSION_FAILURE) {
+                    throw e;
+                }
+                failed.add(productIds.get(error.getIndex()));
+            }
+            matched = e.getResult().getMatchedCount();
+        }
+
+        if (matched + failed.size() < productIds.size()) {
+            List<String> unresolved = productIds.stream().filter(productId -> !failed.contains(productId)).toList();
+            Map<String, Integer> stripes = findStripes(unresolved);
+            for (String productId : unresolved) {
+                Integer productStripes = stripes.get(productId);
+                if (productStripes == null) {
+                    failed.add(productId);
+                } else if (productStripes > 0) {
+                    striped.add(productId);
+                }
+            }
+        }
+        return failed;
+    }
+
+    private void restore(Map<String, Integer> amounts) {
+        Set<String> striped = new LinkedHashSet<>();
+        Set<String> missing = updateUnstriped(amounts, 1, striped);
+        for (String productId : striped) {
+            if (!stripedStockService.release(productId, amounts.get(productId))) {
+                missing.add(productId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.warn("could not restore stock of {} out of {} products -- missing: {}", missing.size(), amounts.size(), missing);
+        }
+    }
+
+    private Map<String, Integer> groupByProduct(List<OrderProduct> order) {
+        return order.stream().collect(Collectors.toMap(OrderProduct::productId, OrderProduct::amount, Integer::sum, LinkedHashMap::new));
+    }
+
+    // stripe counts of the products that exist, missing products are left out
+    private Map<String, Integer> findStripes(List<String> productIds) {
+        Query query = new Query(Criteria.where("id").in(productIds));
+        query.fields().include("id").include("stripes");
+        return mongoTemplate.find(query, Product.class).stream().collect(Collectors.toMap(Product::getId, Product::getStripes));
+    }
+
+    private Query unstripedById(String productId) {
+        return new Query(Criteria.where("id").is(productId).and("stripes").not().gt(0));
+    }
+
+    // the amount guard lives in the update so that a short line is reported as a write error for its own
+    // index, a guard in the filter would make it an anonymous miss that a later read cannot tell from a deduction
+    private AggregationUpdate guardedUpdate(int delta) {
+        Document changed = new Document("$add", List.of("$amount", delta));
+        Document remaining = delta >= 0 ? changed : new Document("$cond", List.of(
+                new Document("$gte", List.of("$amount", -delta)), changed, insufficient()));
+        Document set = new Document("$set", new Document("amount", remaining)
+                .append("version", new Document("$add", List.of("$version", 1))));
+        AggregationOperation stage = context -> set;
+        return AggregationUpdate.from(List.of(stage));
+    }
+
+    // a failing conversion aborts the update of the document with a ConversionFailure error
+    private Document insufficient() {
+        return new Document("$toInt", new Document("$concat", List.of("insufficient stock for product ", new Document("$toString", "$_id"))));
+    }
+}
@@ -0,0 +1,277 @@
+package com.ms.product_service.service;
+
+import com.ms.product_service.model.Product;
+import com.ms.product_service.model.StockStripe;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Splits the stock of hot products across several counter documents so that concurrent reservations of
+ * the same product update different documents. A striped product keeps an amount of 0 on its own
+ * document, its stock is the sum of its stripes. The stripe count is always read from the product
+ * document, so every replica agrees on where the stock of a product lives.
+ */
+@Service
+@Slf4j
+public class StripedStockService {
+
+    private final MongoTemplate mongoTemplate;
+    private final Set<String> rebalancing = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public StripedStockService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Moves the stock of a product into the given number of stripes, or back onto the product when the count is 0.
+     */
+    public void setStripes(String productId, int stripes) {
+        collapse(productId);
+        if (stripes <= 0) {
+            return;
+        }
+
+        // the stripes exist before the product points at them, so no release finds the product striped without them
+        List<StockStripe> stockStripes = new ArrayList<>();
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            stockStripes.add(new StockStripe(StockStripe.idOf(productId, stripe), productId, stripe, 0));
+        }
+        mongoTemplate.insertAll(stockStripes);
+
+        Query query = new Query(Criteria.where("id").is(productId)).addCriteria(unstriped());
+        Product product = mongoTemplate.findAndModify(query, new Update().set("amount", 0).set("stripes", stripes).inc("version", 1), Product.class);
+        if (product == null) {
+            mongoTemplate.remove(new Query(Criteria.where("productId").is(productId)), StockStripe.class);
+            return;
+        }
+        int amount = product.getAmount();
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int share = amount / stripes + (stripe < amount % stripes ? 1 : 0);
+            giveBack(productId, stripe, share);
+        }
+    }
+
+    /**
+     * Replaces the stock of a striped product, spreading the new amount evenly over its stripes. Every stripe is
+     * moved by the difference to its share, so reservations taken from it in the meantime are not overwritten.
+     */
+    public void setAmount(Product product, int amount) {
+        String productId = product.getId();
+        int stripes = product.getStripes();
+        Map<Integer, Integer> current = findStripes(productId, stripes).stream()
+                .collect(Collectors.toMap(StockStripe::getStripe, StockStripe::getAmount));
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int share = amount / stripes + (stripe < amount % stripes ? 1 : 0);
+            int delta = share - current.getOrDefault(stripe, 0);
+            if (delta > 0) {
+                giveBack(productId, stripe, delta);
+            } else if (delta < 0) {
+                drain(productId, stripe, -delta);
+            }
+        }
+    }
+
+    public void deleteStripes(String productId) {
+        mongoTemplate.remove(new Query(Criteria.where("productId").is(productId)), StockStripe.class);
+    }
+
+    public int getAmount(Product product) {
+        if (product.getStripes() == 0) {
+            return product.getAmount();
+        }
+        return findStripes(product.getId(), product.getStripes()).stream().mapToInt(StockStripe::getAmount).sum();
+    }
+
+    /**
+     * Takes the amount from a single stripe when one holds enough, starting at a random stripe,
+     * otherwise gathers it from several stripes. A product that is not striped (anymore) is deducted
+     * directly. Returns false, leaving the stock untouched, if the product does not hold enough in total.
+     */
+    public boolean reserve(String productId, int amount) {
+        int stripes = stripesOf(productId);
+        if (stripes <= 0) {
+            return stripes == 0 && takeUnstriped(productId, amount);
+        }
+
+        int start = ThreadLocalRandom.current().nextInt(stripes);
+        for (int i = 0; i < stripes; i++) {
+            int stripe = (start + i) % stripes;
+            if (take(productId, stripe, amount)) {
+                return true;
+            }
+        }
+
+        // no single stripe holds enough, gather from several and even them out afterwards
+        Map<Integer, Integer> taken = new HashMap<>();
+        int remaining = amount;
+        for (StockStripe stockStripe : findStripes(productId, stripes)) {
+            int share = Math.min(stockStripe.getAmount(), remaining);
+            if (share > 0 && take(productId, stockStripe.getStripe(), share)) {
+                taken.put(stockStripe.getStripe(), share);
+                remaining -= share;
+            }
+            if (remaining == 0) {
+                rebalanceAsync(productId);
+                return true;
+            }
+        }
+        taken.forEach((stripe, share) -> giveBack(productId, stripe, share));
+        return false;
+    }
+
+    /**
+     * Gives the amount back to a random stripe of the product, or to the product itself once it is no longer
+     * striped. Returns false if the product does not exist.
+     */
+    public boolean release(String productId, int amount) {
+        // each miss means the stripes were collapsed or set up in between, the next round sees the new count
+        while (true) {
+            int stripes = stripesOf(productId);
+            if (stripes < 0) {
+                return false;
+            }
+            if (stripes == 0) {
+                Query query = new Query(Criteria.where("id").is(productId)).addCriteria(unstriped());
+                if (mongoTemplate.updateFirst(query, new Update().inc("amount", amount).inc("version", 1), Product.class).getMatchedCount() > 0) {
+                    return true;
+                }
+            } else if (give(productId, ThreadLocalRandom.current().nextInt(stripes), amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Evens out the stripes of a product by moving stock from the fullest stripes to the emptiest ones.
+     */
+    public void rebalance(String productId) {
+        List<StockStripe> stockStripes = findStripes(productId, Math.max(stripesOf(productId), 0));
+        if (stockStripes.size() < 2) {
+            return;
+        }
+        int target = stockStripes.stream().mapToInt(StockStripe::getAmount).sum() / stockStripes.size();
+        Deque<StockStripe> donors = new ArrayDeque<>(stockStripes.stream().filter(s -> s.getAmount() > target).toList());
+        for (StockStripe receiver : stockStripes.stream().filter(s -> s.getAmount() < target).toList()) {
+            int missing = target - receiver.getAmount();
+            while (missing > 0 && !donors.isEmpty()) {
+                StockStripe donor = donors.peek();
+                int move = Math.min(missing, donor.getAmount() - target);
+                if (!take(productId, donor.getStripe(), move)) {
+                    // drained by reservations in the meantime
+                    donors.pop();
+                    continue;
+                }
+                giveBack(productId, receiver.getStripe(), move);
+                donor.setAmount(donor.getAmount() - move);
+                missing -= move;
+                if (donor.getAmount() <= target) {
+                    donors.pop();
+                }
+            }
+        }
+    }
+
+    private void rebalanceAsync(String productId) {
+        if (rebalancing.add(productId)) {
+            Thread.startVirtualThread(() -> {
+                try {
+                    rebalance(productId);
+                } catch (Exception e) {
+                    log.warn("failed to rebalance stripes of product {}", productId, e);
+                } finally {
+                    rebalancing.remove(productId);
+                }
+            });
+        }
+    }
+
+    // moves the stock of every stripe of the product back onto the product document, releases landing on a
+    // stripe that is already gone follow the product
+    private void collapse(String productId) {
+        Query query = new Query(Criteria.where("id").is(productId).and("stripes").gt(0));
+        Product product = mongoTemplate.findAndModify(query, new Update().set("stripes", 0).inc("version", 1), Product.class);
+        if (product == null) {
+            return;
+        }
+
+        int amount = 0;
+        for (int stripe = 0; stripe < product.getStripes(); stripe++) {
+            StockStripe removed = mongoTemplate.findAndRemove(byStripe(productId, stripe), StockStripe.class);
+            if (removed != null) {
+                amount += removed.getAmount();
+            }
+        }
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(productId)), new Update().inc("amount", amount), Product.class);
+    }
+
+    // -1 when the product does not exist
+    private int stripesOf(String productId) {
+        Query query = new Query(Criteria.where("id").is(productId));
+        query.fields().include("stripes");
+        Product product = mongoTemplate.findOne(query, Product.class);
+        return product == null ? -1 : product.getStripes();
+    }
+
+    private boolean takeUnstriped(String productId, int amount) {
+        Query query = new Query(Criteria.where("id").is(productId).and("amount").gte(amount)).addCriteria(unstriped());
+        return mongoTemplate.updateFirst(query, new Update().inc("amount", -amount).inc("version", 1), Product.class).getMatchedCount() > 0;
+    }
+
+    // products stored before striping existed have no stripes field
+    private Criteria unstriped() {
+        return Criteria.where("stripes").not().gt(0);
+    }
+
+    private boolean take(String productId, int stripe, int amount) {
+        Query query = byStripe(productId, stripe).addCriteria(Criteria.where("amount").gte(amount));
+        StockStripe updated = mongoTemplate.findAndModify(query, new Update().inc("amount", -amount), FindAndModifyOptions.options().returnNew(true), StockStripe.class);
+        if (updated != null && updated.getAmount() == 0) {
+            rebalanceAsync(productId);
+        }
+        return updated != null;
+    }
+
+    // takes up to the amount from a stripe, less when reservations emptied it in the meantime
+    private void drain(String productId, int stripe, int amount) {
+        Document drained = new Document("$set", new Document("amount",
+                new Document("$max", List.of(new Document("$subtract", List.of("$amount", amount)), 0))));
+        AggregationOperation stage = context -> drained;
+        mongoTemplate.updateFirst(byStripe(productId, stripe), AggregationUpdate.from(List.of(stage)), StockStripe.class);
+    }
+
+    private boolean give(String productId, int stripe, int amount) {
+        return mongoTemplate.updateFirst(byStripe(productId, stripe), new Update().inc("amount", amount), StockStripe.class).getMatchedCount() > 0;
+    }
+
+    // a stripe collapsed in the meantime hands the amount to wherever the stock of the product lives now
+    private void giveBack(String productId, int stripe, int amount) {
+        if (!give(productId, stripe, amount)) {
+            release(productId, amount);
+        }
+    }
+
+    private List<StockStripe> findStripes(String productId, int stripes) {
+        List<String> ids = IntStream.range(0, stripes).mapToObj(stripe -> StockStripe.idOf(productId, stripe)).toList();
+        return mongoTemplate.find(new Query(Criteria.where("id").in(ids)), StockStripe.class);
+    }
+
+    private Query byStripe(String productId, int stripe) {
+        return new Query(Criteria.where("id").is(StockStripe.idOf(productId, stripe)));
+    }
+}
@@ -2,32 +2,64 @@ package com.ms.product_service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
+import com.ms.commons.cache.CacheCompression;
+import com.ms.commons.cache.CacheFormat;
+import com.ms.commons.cache.CacheValueSerializer;
+import com.ms.product_service.dto.CategoryFacet;
+import com.ms.product_service.dto.CategoryStatsResponse;
 import com.ms.product_service.dto.OrderDTO;
+import com.ms.product_service.dto.OrderProduct;
+import com.ms.product_service.dto.PriceBucketFacet;
+import com.ms.product_service.dto.ProductBatchResponse;
 import com.ms.product_service.dto.ProductCategory;
+import com.ms.product_service.dto.ProductFilterPage;
+import com.ms.product_service.dto.ProductImportReport;
+import com.ms.product_service.dto.ProductPage;
 import com.ms.product_service.dto.ProductResponse;
 import com.ms.product_service.dto.RejectOrderDTO;
 import com.ms.product_service.exception.ResourceNotFoundException;
+import com.ms.product_service.model.CategoryStats;
+import com.ms.product_service.model.EventBackfill;
 import com.ms.product_service.model.Product;
+import com.ms.product_service.model.StockHold;
 import com.ms.product_service.repository.ProductRepository;
+import com.ms.product_service.search.SuggestionTrie;
+import com.ms.product_service.service.CategoryStatsService;
 import com.ms.product_service.service.ProductCacheService;
+import com.ms.product_service.service.ProductReadService;
+import com.ms.product_service.service.ProductSearchService;
+import com.ms.product_service.service.ProductService;
+import com.ms.product_service.service.ProductStateBackfillService;
+import com.ms.product_service.service.ProductSuggestService;
+import com.ms.product_service.service.StockReservationService;
 import com.redis.testcontainers.RedisContainer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.http.*;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -36,8 +68,15 @@ import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
 import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -46,6 +85,7 @@ import static org.testcontainers.shaded.org.awaitility.Awaitility.await;
 @Import(TestcontainersConfiguration.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @Testcontainers
+@Slf4j
 class ProductServiceApplicationTests {
 
 	@Container
@@ -76,6 +116,36 @@ class ProductServiceApplicationTests {
     @Autowired
 	ProductRepository productRepository;
 
+	@Autowired
+	StockReservationService stockReservationService;
+
+	@Autowired
+	MongoTemplate mongoTemplate;
+
+	@Autowired
+	ProductSearchService productSearchService;
+
+	@Autowired
+	ProductSuggestService productSuggestService;
+
+	@Autowired
+	RedisConnectionFactory redisConnectionFactory;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	CategoryStatsService categoryStatsService;
+
+	@Autowired
+	ProductReadService productReadService;
+
+	@Autowired
+	ProductStateBackfillService productStateBackfillService;
+
+	@Autowired
+	ProductService productService;
+
 	@DynamicPropertySource
 	static void setTestProperties(DynamicPropertyRegistry registry) {
 		Supplier<Object> supplier = () -> false;
@@ -99,6 +169,8 @@ class ProductServiceApplicationTests {
 	String createdProductTopic = "created-product";
 	String updatedProductTopic = "updated-product";
 	String deletedProductTopic = "deleted-product";
+	String productStateTopic = "product-state";
+	String failedPaymentTopic = "failed-payment";
 	String acceptedOrderTopic = "accepted-order";
 	String rejectedOrderTopic = "rejected-order";
 
@@ -107,6 +179,9 @@ class ProductServiceApplicationTests {
 
 	String baseUrl;
 
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
 	@BeforeAll
 	static void beforeAll() {
 		props = new Properties();
@@ -129,6 +204,8 @@ class ProductServiceApplicationTests {
 	@AfterEach
 	void cleanUp(){
 		productRepository.deleteAll();
+		mongoTemplate.remove(new Query(), StockHold.class);
+		mongoTemplate.remove(new Query(), CategoryStats.class);
 
 		if(consumer != null){
 			consumer.unsubscribe();
@@ -225,6 +302,62 @@ class ProductServiceApplicationTests {
 		}
     }
 
+	@Test
+	void shouldImportProductsAndReportInvalidRows(){
+		String rows = """
+				{"name": "Apple", "description": "Red", "price": 1.50, "category": "food", "amount": 10}
+				{"name": "Saw", "description": "Steel saw", "price": 20.00, "category": "tool", "amount": 5}
+				{"name": "Ghost", "description": "No category", "price": 1.00, "category": "unknown", "amount": 1}
+				""";
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_NDJSON);
+		headers.set("X-USER-ROLE", "ADMIN");
+
+		ResponseEntity<ProductImportReport> response = restTemplate.exchange(baseUrl + "/stock/import", HttpMethod.POST, new HttpEntity<>(rows, headers), ProductImportReport.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ProductImportReport report = response.getBody();
+		assertThat(report).isNotNull();
+
+		if(report != null) {
+			assertThat(report.rows()).isEqualTo(3);
+			assertThat(report.imported()).isEqualTo(2);
+			assertThat(report.errors().size()).isEqualTo(1);
+			assertThat(report.errors().getFirst().row()).isEqualTo(3);
+		}
+
+		assertThat(productCacheService.getProducts().size()).isEqualTo(5);
+	}
+
+	@Test
+	void shouldImportCsvWithQuotedNewlines(){
+		String rows = """
+				name,description,price,category,amount
+				Apple,"Red,
+				crisp ""and"" sweet",1.50,food,10
+
+				Ghost,No category,1.00,unknown,1
+				Saw,Steel saw,20.00,tool,5
+				""";
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("text/csv"));
+		headers.set("X-USER-ROLE", "ADMIN");
+
+		ResponseEntity<ProductImportReport> response = restTemplate.exchange(baseUrl + "/stock/import", HttpMethod.POST, new HttpEntity<>(rows, headers), ProductImportReport.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ProductImportReport report = response.getBody();
+		assertThat(report).isNotNull();
+		assertThat(report.rows()).isEqualTo(3);
+		assertThat(report.imported()).isEqualTo(2);
+		assertThat(report.errors().getFirst().row()).isEqualTo(3);
+
+		Product apple = mongoTemplate.findOne(new Query(Criteria.where("name").is("Apple")), Product.class);
+		assertThat(apple.getDescription()).isEqualTo("Red,\ncrisp \"and\" sweet");
+	}
+
 	@Test
 	void shouldUpdateProductsAndSendEvent(){
 		consumer = new KafkaConsumer<>(props);
@@ -413,6 +546,275 @@ class ProductServiceApplicationTests {
         }
     }
 
+	@Test
+	void shouldRollBackReservedStockOnRejectedOrder(){
+		consumer = new KafkaConsumer<>(props);
+		consumer.subscribe(Collections.singleton(rejectedOrderTopic));
+
+		String orderId = "1";
+		String email = "fred";
+
+		String rejectedOrder = String.format("""
+				{
+					"order": [
+						{
+							"id": "%s",
+							"email": "%s",
+							"productId": "1",
+							"productName": "Headphones",
+							"price": null,
+							"amount": 10
+						},
+						{
+							"id": "%s",
+							"email": "%s",
+							"productId": "2",
+							"productName": "Leather Jacket",
+							"price": null,
+							"amount": 31
+						}
+					]
+				}
+				""", orderId, email, orderId, email);
+
+		kafkaTemplate.send(checkOrderTopic, rejectedOrder);
+
+		RejectOrderDTO rejectOrderDTO = new RejectOrderDTO(orderId, email, List.of("Leather Jacket"));
+		try {
+			String rejectionJson = objectMapper.writeValueAsString(rejectOrderDTO);
+			await().atMost(Duration.ofSeconds(10))
+					.untilAsserted(() -> {
+						ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(5));
+						assertThat(records.count()).isGreaterThan(0);
+						records.forEach(record -> assertThat(record.value()).isEqualTo(rejectionJson));
+					});
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException(e);
+		}
+
+		// check if the reserved line was given back
+		assertThat(productRepository.findById("1").orElseThrow().getAmount()).isEqualTo(100);
+		assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(30);
+	}
+
+	@Test
+	void shouldSettleCompetingOrdersForTheSameProduct(){
+		consumer = new KafkaConsumer<>(props);
+		consumer.subscribe(List.of(acceptedOrderTopic, rejectedOrderTopic));
+
+		String order = """
+				{
+					"order": [
+						{
+							"id": "%s",
+							"email": "fred",
+							"productId": "2",
+							"productName": "Leather Jacket",
+							"price": null,
+							"amount": 20
+						}
+					]
+				}
+				""";
+
+		kafkaTemplate.send(checkOrderTopic, String.format(order, "1"));
+		kafkaTemplate.send(checkOrderTopic, String.format(order, "2"));
+
+		List<String> accepted = new ArrayList<>();
+		List<String> rejected = new ArrayList<>();
+		await().atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> {
+					consumer.poll(Duration.ofSeconds(1)).forEach(record -> {
+						if(record.topic().equals(acceptedOrderTopic)) {
+							accepted.add(record.value());
+						} else {
+							rejected.add(record.value());
+						}
+					});
+					assertThat(accepted.size()).isEqualTo(1);
+					assertThat(rejected.size()).isEqualTo(1);
+				});
+
+		assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(10);
+	}
+
+	@Test
+	void shouldNotDeductRedeliveredOrdersTwice(){
+		OrderDTO order = new OrderDTO(List.of(new OrderProduct("redelivered-order", "fred", "2", "Leather Jacket", null, 5)));
+
+		productService.checkOrders(List.of(order, order));
+		assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(25);
+
+		// the batch comes again after its offsets were not committed
+		productService.checkOrders(List.of(order));
+		productService.checkOrder(order);
+		assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(25);
+	}
+
+	@Test
+	void shouldReleaseHeldStockOnFailedPayment(){
+		consumer = new KafkaConsumer<>(props);
+		consumer.subscribe(Collections.singleton(acceptedOrderTopic));
+
+		String order = """
+				{
+					"order": [
+						{
+							"id": "held-order",
+							"email": "fred",
+							"productId": "2",
+							"productName": "Leather Jacket",
+							"price": null,
+							"amount": 5
+						}
+					]
+				}
+				""";
+		kafkaTemplate.send(checkOrderTopic, order);
+
+		await().atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> assertThat(consumer.poll(Duration.ofSeconds(1)).count()).isGreaterThan(0));
+		assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(25);
+
+		kafkaTemplate.send(failedPaymentTopic, """
+				{"email": "fred", "orderId": "held-order"}
+				""");
+
+		await().atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(30));
+
+		// order-service still asks for the stock back, which must not be given twice
+		kafkaTemplate.send(stockRecoverTopic, order);
+		await().during(Duration.ofSeconds(3)).atMost(Duration.ofSeconds(5))
+				.untilAsserted(() -> assertThat(productRepository.findById("2").orElseThrow().getAmount()).isEqualTo(30));
+	}
+
+	@Test
+	void shouldNotOversellStripedProduct() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-USER-ROLE", "ADMIN");
+		String url = baseUrl + "/2/stock/stripes?count=";
+
+		ResponseEntity<ProductResponse> striped = restTemplate.exchange(url + 4, HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+		assertThat(striped.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(striped.getBody().amount()).isEqualTo(30);
+
+		List<OrderProduct> order = List.of(new OrderProduct("1", "fred", "2", "Leather Jacket", null, 1));
+		int reserved = 0;
+		try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<List<String>>> results = new ArrayList<>();
+			for(int i = 0; i < 40; i++) {
+				results.add(executor.submit(() -> stockReservationService.reserve(order)));
+			}
+			for(Future<List<String>> result: results) {
+				if(result.get().isEmpty()) {
+					reserved++;
+				}
+			}
+		}
+		assertThat(reserved).isEqualTo(30);
+
+		ResponseEntity<ProductResponse> collapsed = restTemplate.exchange(url + 0, HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+		assertThat(collapsed.getBody().amount()).isEqualTo(0);
+		assertThat(productRepository.findById("2").orElseThrow().getStripes()).isEqualTo(0);
+	}
+
+	@Test
+	void shouldKeepStockWhenStripesAreCollapsed() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-USER-ROLE", "ADMIN");
+		String url = baseUrl + "/3/stock/stripes?count=";
+
+		restTemplate.exchange(url + 4, HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+		List<OrderProduct> order = List.of(new OrderProduct("1", "fred", "3", "Hammer", null, 9));
+		assertThat(stockReservationService.reserve(order).isEmpty()).isTrue();
+
+		ResponseEntity<ProductResponse> collapsed = restTemplate.exchange(url + 0, HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+		assertThat(collapsed.getBody().amount()).isEqualTo(70);
+		assertThat(productRepository.findById("3").orElseThrow().getAmount()).isEqualTo(70);
+
+		// given back after the collapse, the stock lands on the product again
+		stockReservationService.release(order);
+		assertThat(productRepository.findById("3").orElseThrow().getAmount()).isEqualTo(79);
+	}
+
+	@Test
+	void shouldBackfillProductStateTopicOnce() {
+		mongoTemplate.remove(new Query(), EventBackfill.class);
+		productStateBackfillService.backfill();
+
+		EventBackfill backfill = mongoTemplate.findById(productStateTopic, EventBackfill.class);
+		assertThat(backfill).isNotNull();
+		assertThat(backfill.getPublished()).isEqualTo(3L);
+
+		consumer = new KafkaConsumer<>(props);
+		consumer.subscribe(Collections.singletonList(productStateTopic));
+		Set<String> productIds = new HashSet<>();
+		await().atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> {
+					consumer.poll(Duration.ofSeconds(1)).forEach(record -> productIds.add(record.key()));
+					assertThat(productIds.containsAll(Set.of("1", "2", "3"))).isTrue();
+				});
+
+		// recorded, so a restart does not publish the products again
+		productRepository.save(new Product("4", 0, "Saw", "Steel saw", BigDecimal.valueOf(20.00), ProductCategory.TOOL, 5));
+		productStateBackfillService.backfill();
+		assertThat(mongoTemplate.findById(productStateTopic, EventBackfill.class).getPublished()).isEqualTo(3L);
+	}
+
+	// run with -Dbenchmark=true, reports single product reservations per second for each stripe count
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkStripedReservations() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set("X-USER-ROLE", "ADMIN");
+		List<OrderProduct> order = List.of(new OrderProduct("1", "fred", "1", "Headphones", null, 1));
+		int reservations = 20_000;
+
+		for(int stripes: List.of(0, 1, 2, 4, 8)) {
+			restTemplate.exchange(baseUrl + "/1/stock/stripes?count=0", HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+			Product product = productRepository.findById("1").orElseThrow();
+			product.setAmount(reservations);
+			productRepository.save(product);
+			restTemplate.exchange(baseUrl + "/1/stock/stripes?count=" + stripes, HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+
+			long start = System.nanoTime();
+			try(ExecutorService executor = Executors.newFixedThreadPool(64)) {
+				for(int i = 0; i < reservations; i++) {
+					executor.submit(() -> stockReservationService.reserve(order));
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			log.info("stripes={} reservations/s={}", stripes, Math.round(reservations / seconds));
+		}
+		restTemplate.exchange(baseUrl + "/1/stock/stripes?count=0", HttpMethod.PUT, new HttpEntity<>(headers), ProductResponse.class);
+	}
+
+	// run with -Dbenchmark=true, reports throughput and p99 latency of the catalog reads on both read paths
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkReadPaths() throws Exception {
+		List<HttpRequest> endpoints = Stream.of("/1", "/2/available?amount=1", "/page?size=2", "/category/tool", "/3/price")
+				.map(path -> HttpRequest.newBuilder(URI.create(baseUrl + path)).build())
+				.toList();
+
+		ConcurrentRequestBenchmark benchmark = new ConcurrentRequestBenchmark(2_000, 40_000);
+		for(boolean reactive: List.of(false, true, false, true)) {
+			ReflectionTestUtils.setField(productReadService, "reactive", reactive);
+			benchmark.run("reactive=" + reactive, endpoints);
+		}
+		ReflectionTestUtils.setField(productReadService, "reactive", true);
+	}
+
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/1")).build();
+
+		new ConcurrentRequestBenchmark(10_000, 50_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
 	private void validateOrderPrice(String json){
 		try {
 			OrderDTO order = objectMapper.readValue(json, OrderDTO.class);
@@ -439,6 +841,73 @@ class ProductServiceApplicationTests {
 		}
 	}
 
+	@Test
+	void shouldFetchProductPages() {
+		ResponseEntity<ProductPage> firstResponse = restTemplate.getForEntity(baseUrl + "/page?size=2", ProductPage.class);
+		assertThat(firstResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ProductPage firstPage = firstResponse.getBody();
+		assertThat(firstPage).isNotNull();
+
+		if(firstPage != null) {
+			assertThat(firstPage.products().size()).isEqualTo(2);
+			assertThat(firstPage.nextCursor()).isEqualTo("2");
+
+			ResponseEntity<ProductPage> secondResponse = restTemplate.getForEntity(baseUrl + "/page?size=2&after=" + firstPage.nextCursor(), ProductPage.class);
+			ProductPage secondPage = secondResponse.getBody();
+			assertThat(secondPage).isNotNull();
+
+			if(secondPage != null) {
+				assertThat(secondPage.products().size()).isEqualTo(1);
+				assertThat(secondPage.products().getFirst().productId()).isEqualTo("3");
+				assertThat(secondPage.nextCursor()).isNull();
+			}
+		}
+	}
+
+	@Test
+	void shouldFilterProductsWithFacets() {
+		ResponseEntity<ProductFilterPage> firstResponse = restTemplate.getForEntity(baseUrl + "/filter?maxPrice=50&inStock=true&sort=price_desc&size=1", ProductFilterPage.class);
+		assertThat(firstResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		ProductFilterPage firstPage = firstResponse.getBody();
+		assertThat(firstPage).isNotNull();
+
+		assertThat(firstPage.products().size()).isEqualTo(1);
+		assertThat(firstPage.products().getFirst().productName()).isEqualTo("Hammer");
+		assertThat(firstPage.categories()).isEqualTo(List.of(
+				new CategoryFacet(ProductCategory.TOOL, 1), new CategoryFacet(ProductCategory.ELECTRONIC, 1)));
+		assertThat(firstPage.priceBuckets().containsAll(List.of(
+				new PriceBucketFacet(BigDecimal.valueOf(25), BigDecimal.valueOf(50), 2),
+				new PriceBucketFacet(BigDecimal.valueOf(50), BigDecimal.valueOf(100), 1)))).isTrue();
+
+		ResponseEntity<ProductFilterPage> secondResponse = restTemplate.getForEntity(baseUrl + "/filter?maxPrice=50&inStock=true&sort=price_desc&size=1&after=" + firstPage.nextCursor(), ProductFilterPage.class);
+		ProductFilterPage secondPage = secondResponse.getBody();
+		assertThat(secondPage).isNotNull();
+
+		assertThat(secondPage.products().size()).isEqualTo(1);
+		assertThat(secondPage.products().getFirst().productName()).isEqualTo("Headphones");
+		assertThat(secondPage.nextCursor()).isNull();
+
+		ResponseEntity<String> badCursor = restTemplate.getForEntity(baseUrl + "/filter?sort=price_desc&after=nope", String.class);
+		assertThat(badCursor.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		ResponseEntity<ProductFilterPage> byCategory = restTemplate.getForEntity(baseUrl + "/filter?category=clothing", ProductFilterPage.class);
+		assertThat(byCategory.getBody()).isNotNull();
+		assertThat(byCategory.getBody().products().size()).isEqualTo(1);
+		assertThat(byCategory.getBody().products().getFirst().productId()).isEqualTo("2");
+	}
+
+	@Test
+	void shouldExportProductsAsNdjson() {
+		ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + "/export", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isNotNull();
+
+		if(response.getBody() != null) {
+			assertThat(response.getBody().lines().count()).isEqualTo(3);
+		}
+	}
+
 	@Test
 	void shouldFetchProductById(){
 		String id = "1";
@@ -455,6 +924,130 @@ class ProductServiceApplicationTests {
 		}
 	}
 
+	@Test
+	void shouldCacheProductsInCompactFormat(){
+		ResponseEntity<ProductResponse> response = restTemplate.getForEntity(baseUrl + "/1", ProductResponse.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		byte[] cached;
+		try(RedisConnection connection = redisConnectionFactory.getConnection()) {
+			cached = connection.stringCommands().get("product::1".getBytes(StandardCharsets.UTF_8));
+		}
+		assertThat(cached).isNotNull();
+		// Smile header instead of the JDK serialization stream magic
+		assertThat(cached[0]).isEqualTo((byte) 0x20);
+
+		CacheValueSerializer serializer = new CacheValueSerializer(CacheFormat.JDK, CacheCompression.NONE, 0, getClass().getClassLoader());
+		assertThat(serializer.deserialize(cached)).isEqualTo(response.getBody());
+	}
+
+	@Test
+	void shouldExpireCachedProductsWithJitteredTtl(){
+		ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + "/2/name", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		Long ttl;
+		try(RedisConnection connection = redisConnectionFactory.getConnection()) {
+			ttl = connection.keyCommands().pTtl("product-name::2".getBytes(StandardCharsets.UTF_8));
+		}
+		// product-name lives 6h, give or take 10%
+		assertThat(ttl).isBetween(Duration.ofHours(6).multipliedBy(9).dividedBy(10).toMillis(), Duration.ofHours(6).multipliedBy(11).dividedBy(10).toMillis());
+	}
+
+	@Test
+	void shouldMaintainCategoryStats(){
+		// the fixtures are saved straight to the repository, the reconciliation counts them in
+		categoryStatsService.reconcile();
+
+		String requestBody = """
+					{
+						"name": "Screwdriver",
+						"description": "Flat screwdriver",
+						"price": 12.50,
+						"category": "tool",
+						"amount": 5
+					}
+				""";
+		ResponseEntity<ProductResponse> addResponse = restTemplate.exchange(baseUrl + "/stock", HttpMethod.POST, createHttpEntity(null, "ADMIN", requestBody), ProductResponse.class);
+		assertThat(addResponse.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+		String updatedBody = """
+					{
+						"name": "Hammer",
+						"description": "Steel hammer",
+						"price": 60.00,
+						"category": "tool",
+						"amount": 0
+					}
+				""";
+		ResponseEntity<ProductResponse> updateResponse = restTemplate.exchange(baseUrl + "/3/stock", HttpMethod.PUT, createHttpEntity(null, "ADMIN", updatedBody), ProductResponse.class);
+		assertThat(updateResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ResponseEntity<CategoryStatsResponse> response = restTemplate.getForEntity(baseUrl + "/category/tool/stats", CategoryStatsResponse.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		CategoryStatsResponse stats = response.getBody();
+		assertThat(stats).isNotNull();
+
+		if(stats != null) {
+			assertThat(stats.productCount()).isEqualTo(2);
+			assertThat(stats.inStockCount()).isEqualTo(1);
+			assertThat(stats.totalUnits()).isEqualTo(5);
+			assertThat(stats.minPrice()).isEqualByComparingTo(BigDecimal.valueOf(12.5));
+			assertThat(stats.maxPrice()).isEqualByComparingTo(BigDecimal.valueOf(60));
+		}
+
+		// deleting the dearest product narrows the price range from the remaining ones
+		restTemplate.exchange(baseUrl + "/3/stock", HttpMethod.DELETE, createHttpEntity(null, "ADMIN", null), String.class);
+		CategoryStatsResponse afterDelete = categoryStatsService.getStats("tool");
+		assertThat(afterDelete.productCount()).isEqualTo(1);
+		assertThat(afterDelete.maxPrice()).isEqualByComparingTo(BigDecimal.valueOf(12.5));
+
+		double corrections = meterRegistry.counter("product.category.stats.corrections").count();
+		categoryStatsService.reconcile();
+		assertThat(meterRegistry.counter("product.category.stats.corrections").count()).isEqualTo(corrections);
+	}
+
+	@Test
+	void shouldCountPinnedVirtualThreads() throws InterruptedException {
+		Object lock = new Object();
+		// sleeping while holding a monitor keeps the virtual thread on its carrier
+		Thread pinned = Thread.ofVirtual().start(() -> {
+			synchronized (lock) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		pinned.join();
+
+		await().atMost(Duration.ofSeconds(10))
+				.untilAsserted(() -> assertThat(meterRegistry.counter("jvm.threads.virtual.pinned").count()).isGreaterThan(0.0));
+	}
+
+	@Test
+	void shouldAnswerNotModifiedForCurrentETag(){
+		String id = "1";
+
+		ResponseEntity<ProductResponse> firstResponse = restTemplate.getForEntity(baseUrl + "/" + id, ProductResponse.class);
+		assertThat(firstResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		String eTag = firstResponse.getHeaders().getETag();
+		assertThat(eTag).isNotNull();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setIfNoneMatch(eTag);
+		ResponseEntity<ProductResponse> secondResponse = restTemplate.exchange(baseUrl + "/" + id, HttpMethod.GET, new HttpEntity<>(headers), ProductResponse.class);
+		assertThat(secondResponse.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(secondResponse.hasBody()).isFalse();
+
+		ResponseEntity<ProductResponse[]> allResponse = restTemplate.getForEntity(baseUrl, ProductResponse[].class);
+		HttpHeaders allHeaders = new HttpHeaders();
+		allHeaders.setIfNoneMatch(Objects.requireNonNull(allResponse.getHeaders().getETag()));
+		ResponseEntity<ProductResponse[]> notModifiedAll = restTemplate.exchange(baseUrl, HttpMethod.GET, new HttpEntity<>(allHeaders), ProductResponse[].class);
+		assertThat(notModifiedAll.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+	}
+
 	@Test
 	void shouldFetchByCategory(){
 		ProductCategory category = ProductCategory.ELECTRONIC;
@@ -512,6 +1105,73 @@ class ProductServiceApplicationTests {
 		assertThat(falseResponse.getBody()).isFalse();
 	}
 
+	@Test
+	void shouldSearchProductsWithTyposAndPrefixes(){
+		List.of("1", "2", "3").forEach(productSearchService::productChanged);
+		productSearchService.indexChanges();
+
+		ResponseEntity<ProductResponse[]> typo = restTemplate.getForEntity(baseUrl + "/search?q=wireles hedphones", ProductResponse[].class);
+		assertThat(typo.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(typo.getBody()).isNotNull();
+		assertThat(typo.getBody()[0].productId()).isEqualTo("1");
+
+		ResponseEntity<ProductResponse[]> prefix = restTemplate.getForEntity(baseUrl + "/search?q=ham", ProductResponse[].class);
+		assertThat(prefix.getBody()).isNotNull();
+		assertThat(prefix.getBody().length).isEqualTo(1);
+		assertThat(prefix.getBody()[0].productId()).isEqualTo("3");
+
+		ResponseEntity<ProductResponse[]> filtered = restTemplate.getForEntity(baseUrl + "/search?q=leather&category=TOOL", ProductResponse[].class);
+		assertThat(filtered.getBody()).isNotNull();
+		assertThat(filtered.getBody().length).isEqualTo(0);
+	}
+
+	@Test
+	void shouldSuggestProductsByNamePrefix(){
+		List.of("1", "2", "3").forEach(id -> productSuggestService.productChanged(productCacheService.getProductById(id)));
+
+		ResponseEntity<SuggestionTrie.Suggestion[]> response = restTemplate.getForEntity(baseUrl + "/suggest?q=H", SuggestionTrie.Suggestion[].class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isNotNull();
+		assertThat(response.getBody().length).isEqualTo(2);
+		// ranked by stock
+		assertThat(response.getBody()[0].productId()).isEqualTo("1");
+		assertThat(response.getBody()[1].productId()).isEqualTo("3");
+
+		ResponseEntity<SuggestionTrie.Suggestion[]> inName = restTemplate.getForEntity(baseUrl + "/suggest?q=jack", SuggestionTrie.Suggestion[].class);
+		assertThat(inName.getBody()).isNotNull();
+		assertThat(inName.getBody().length).isEqualTo(1);
+		assertThat(inName.getBody()[0].productName()).isEqualTo("Leather Jacket");
+	}
+
+	@Test
+	void shouldFetchProductBatch(){
+		String requestBody = """
+				{
+					"products": [
+						{ "productId": "1", "amount": 100 },
+						{ "productId": "2", "amount": 31 },
+						{ "productId": "3" },
+						{ "productId": "FAKEID", "amount": 1 }
+					]
+				}
+				""";
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+
+		ResponseEntity<ProductBatchResponse> response = restTemplate.exchange(baseUrl + "/batch", HttpMethod.POST, new HttpEntity<>(requestBody, headers), ProductBatchResponse.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		ProductBatchResponse batch = response.getBody();
+		assertThat(batch).isNotNull();
+
+		assertThat(batch.products().size()).isEqualTo(3);
+		assertThat(batch.products().get(0).available()).isTrue();
+		assertThat(batch.products().get(0).productPrice()).isEqualTo(BigDecimal.valueOf(39.99));
+		assertThat(batch.products().get(1).available()).isFalse();
+		assertThat(batch.products().get(1).productName()).isEqualTo("Leather Jacket");
+		assertThat(batch.products().get(2).available()).isTrue();
+		assertThat(batch.missing()).isEqualTo(List.of("FAKEID"));
+	}
+
 	private HttpEntity<String> createHttpEntity(String emailHeader, String roleHeader, String requestBody){
 		HttpHeaders headers = new HttpHeaders();
 		headers.setContentType(MediaType.APPLICATION_JSON);
@@ -0,0 +1,92 @@
+package com.ms.product_service.cache;
+
+import com.ms.commons.cache.CacheCompression;
+import com.ms.commons.cache.CacheFormat;
+import com.ms.commons.cache.CacheValueSerializer;
+import com.ms.product_service.dto.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cache value codecs on the values product-service caches, a single product, the 'all' list and a
+ * filter result. Run its main method from the test classpath; the encoded sizes are printed before the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    @Param({"JDK", "SMILE", "SMILE_LZ4", "SMILE_DEFLATE"})
+    public String codec;
+
+    @Param({"product", "all", "filter"})
+    public String value;
+
+    private CacheValueSerializer serializer;
+    private Object decoded;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = serializer(codec);
+        decoded = value(value);
+        encoded = serializer.serialize(decoded);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(decoded);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    private static CacheValueSerializer serializer(String codec) {
+        ClassLoader classLoader = CacheCodecBenchmark.class.getClassLoader();
+        return switch (codec) {
+            case "JDK" -> new CacheValueSerializer(CacheFormat.JDK, CacheCompression.NONE, 0, classLoader);
+            case "SMILE" -> new CacheValueSerializer(CacheFormat.SMILE, CacheCompression.NONE, 0, classLoader);
+            case "SMILE_LZ4" -> new CacheValueSerializer(CacheFormat.SMILE, CacheCompression.LZ4, 1024, classLoader);
+            case "SMILE_DEFLATE" -> new CacheValueSerializer(CacheFormat.SMILE, CacheCompression.DEFLATE, 1024, classLoader);
+            default -> throw new IllegalArgumentException(codec);
+        };
+    }
+
+    private static Object value(String value) {
+        List<ProductResponse> products = new ArrayList<>();
+        ProductCategory[] categories = ProductCategory.values();
+        for (int i = 0; i < 500; i++) {
+            products.add(new ProductResponse(Integer.toHexString(0x65f1c0de + i) + "a1b2c3d4e5f6a7b8",
+                    "Product " + i, BigDecimal.valueOf(1000 + i * 37L, 2), categories[i % categories.length], i % 120, i % 7));
+        }
+        return switch (value) {
+            case "product" -> products.getFirst();
+            case "all" -> products;
+            case "filter" -> new ProductFilterResult(products.subList(0, 20).stream().map(ProductResponse::productId).toList(), products.get(19).productId(),
+                    List.of(new CategoryFacet(ProductCategory.FOOD, 125), new CategoryFacet(ProductCategory.TOOL, 125)),
+                    List.of(new PriceBucketFacet(BigDecimal.ZERO, BigDecimal.TEN, 0), new PriceBucketFacet(BigDecimal.TEN, null, 500)));
+            default -> throw new IllegalArgumentException(value);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String value : List.of("product", "all", "filter")) {
+            for (String codec : List.of("JDK", "SMILE", "SMILE_LZ4", "SMILE_DEFLATE")) {
+                System.out.printf("%-8s %-14s %8d bytes%n", value, codec, serializer(codec).serialize(value(value)).length);
+            }
+        }
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ms.product_service.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TwoLevelCacheTests {
+
+    private ConcurrentMapCache remote;
+    private List<Runnable> reloads;
+    private TwoLevelCache cache;
+
+    @BeforeEach
+    void setUp() {
+        remote = new ConcurrentMapCache("product");
+        reloads = new ArrayList<>();
+        // reloads only run when a test says so
+        cache = new TwoLevelCache(Caffeine.newBuilder().build(), Caffeine.newBuilder().build(), remote, null, null, reloads::add);
+    }
+
+    @Test
+    void shouldLoadOnceForConcurrentCallers() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<String> loader = () -> {
+            loads.incrementAndGet();
+            release.await();
+            return "loaded";
+        };
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                results.add(executor.submit(() -> cache.get("1", loader)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get()).isEqualTo("loaded");
+            }
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(remote.get("1").get()).isEqualTo("loaded");
+    }
+
+    @Test
+    void shouldServeStaleValueWhileReloadingEntryChangedElsewhere() {
+        cache.put("1", "old");
+        // another replica changed the entry
+        remote.put("1", "new");
+        cache.evictLocal("1");
+
+        assertThat(cache.get("1", () -> "loaded")).isEqualTo("old");
+        assertThat(reloads.size()).isEqualTo(1);
+
+        reloads.getFirst().run();
+        assertThat(cache.get("1", () -> "loaded")).isEqualTo("new");
+    }
+
+    @Test
+    void shouldNotServeStaleValueAfterEvictingLocally() {
+        cache.put("1", "old");
+        cache.evict("1");
+
+        assertThat(cache.get("1", () -> "new")).isEqualTo("new");
+        assertThat(reloads.isEmpty()).isTrue();
+    }
+}
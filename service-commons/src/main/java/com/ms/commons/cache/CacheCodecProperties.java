@@ -0,0 +1,36 @@
+package com.ms.commons.cache;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How cache values are written to Redis, by default and per cache name. Settings left out of a per-cache entry
+ * fall back to the defaults. Each service binds it under its own prefix, such as 'cart.cache.codec'.
+ */
+@Data
+public class CacheCodecProperties {
+
+    private CacheFormat format = CacheFormat.SMILE;
+    private CacheCompression compression = CacheCompression.LZ4;
+    private DataSize compressionThreshold = DataSize.ofKilobytes(1);
+    private Map<String, Codec> caches = new HashMap<>();
+
+    @Data
+    public static class Codec {
+        private CacheFormat format;
+        private CacheCompression compression;
+        private DataSize compressionThreshold;
+    }
+
+    public CacheValueSerializer serializer(String cacheName, ClassLoader classLoader) {
+        Codec codec = caches.getOrDefault(cacheName, new Codec());
+        return new CacheValueSerializer(
+                codec.getFormat() != null ? codec.getFormat() : format,
+                codec.getCompression() != null ? codec.getCompression() : compression,
+                (int) (codec.getCompressionThreshold() != null ? codec.getCompressionThreshold() : compressionThreshold).toBytes(),
+                classLoader);
+    }
+}
@@ -0,0 +1,7 @@
+package com.ms.commons.cache;
+
+public enum CacheCompression {
+    NONE,
+    LZ4,
+    DEFLATE
+}
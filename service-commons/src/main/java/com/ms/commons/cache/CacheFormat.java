@@ -0,0 +1,6 @@
+package com.ms.commons.cache;
+
+public enum CacheFormat {
+    JDK,
+    SMILE
+}
@@ -0,0 +1,46 @@
+package com.ms.commons.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How long cache entries live in Redis, by default and per cache name. Entries expire after the time to live give
+ * or take the jitter fraction of it, a zero time to live keeps them until evicted. With a refresh-ahead window,
+ * entries read within it before their expiry are reloaded in the background. The max size bounds the
+ * entries kept in process memory by services with a local tier. Each service binds it under its own prefix, such as
+ * 'cart.cache.policy'.
+ */
+@Data
+public class CachePolicyProperties {
+
+    private Duration ttl = Duration.ofHours(1);
+    private double jitter = 0.1;
+    private Duration refreshAhead;
+    // entries held in process memory, on top of Redis
+    private Long maxSize;
+    private Map<String, Policy> caches = new HashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Policy {
+        private Duration ttl;
+        private Double jitter;
+        private Duration refreshAhead;
+        private Long maxSize;
+    }
+
+    public Policy policy(String cacheName) {
+        Policy policy = caches.getOrDefault(cacheName, new Policy());
+        return new Policy(
+                policy.getTtl() != null ? policy.getTtl() : ttl,
+                policy.getJitter() != null ? policy.getJitter() : jitter,
+                policy.getRefreshAhead() != null ? policy.getRefreshAhead() : refreshAhead,
+                policy.getMaxSize() != null ? policy.getMaxSize() : maxSize);
+    }
+}
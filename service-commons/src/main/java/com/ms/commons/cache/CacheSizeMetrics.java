@@ -0,0 +1,60 @@
+package com.ms.commons.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the number of Redis entries of every cache as the 'cache.size' gauge. Keys are counted with SCAN on a
+ * fixed delay, never on the scrape, once the bean is registered in a context with scheduling enabled.
+ */
+public class CacheSizeMetrics implements SchedulingConfigurer {
+
+    private final CacheManager cacheManager;
+    private final RedisConnectionFactory connectionFactory;
+    private final MeterRegistry meterRegistry;
+    private final Duration interval;
+    private final Map<String, AtomicLong> sizes = new ConcurrentHashMap<>();
+
+    public CacheSizeMetrics(CacheManager cacheManager, RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry, Duration interval) {
+        this.cacheManager = cacheManager;
+        this.connectionFactory = connectionFactory;
+        this.meterRegistry = meterRegistry;
+        this.interval = interval;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addFixedDelayTask(this::countEntries, interval);
+    }
+
+    public void countEntries() {
+        for (String name : cacheManager.getCacheNames()) {
+            if (!(cacheManager.getCache(name) instanceof RedisCache cache)) {
+                continue;
+            }
+            ScanOptions options = ScanOptions.scanOptions().match(cache.getCacheConfiguration().getKeyPrefixFor(name) + "*").count(1000).build();
+            long count = 0;
+            try (RedisConnection connection = connectionFactory.getConnection(); Cursor<byte[]> keys = connection.keyCommands().scan(options)) {
+                while (keys.hasNext()) {
+                    keys.next();
+                    count++;
+                }
+            }
+            sizes.computeIfAbsent(name, cacheName -> meterRegistry.gauge("cache.size", Tags.of("cache", cacheName, "tier", "remote"), new AtomicLong()))
+                    .set(count);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.ms.commons.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes cache values as JDK serialization or as Smile, a binary JSON, behind a one byte header naming the format
+ * and the compression, which only applies to payloads of at least the threshold. Smile values carry their type, a
+ * collection being typed after its first element. Values of any format are read back whatever the configured one,
+ * including the bare JDK serialization written before the header existed.
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    private static final int JDK = 0x10;
+    private static final int SMILE = 0x20;
+    private static final int UNCOMPRESSED = 0x00;
+    private static final int LZ4 = 0x01;
+    private static final int DEFLATE = 0x02;
+    // first byte of the JDK serialization stream magic
+    private static final byte JDK_STREAM = (byte) 0xAC;
+
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory())
+            .findAndRegisterModules()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+    private static final Map<String, JavaType> TYPES = new ConcurrentHashMap<>();
+
+    private final CacheFormat format;
+    private final CacheCompression compression;
+    private final int compressionThreshold;
+    private final RedisSerializer<Object> jdk;
+
+    public CacheValueSerializer(CacheFormat format, CacheCompression compression, int compressionThreshold, ClassLoader classLoader) {
+        this.format = format;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+        this.jdk = new JdkSerializationRedisSerializer(classLoader);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] payload = format == CacheFormat.SMILE ? writeSmile(value) : jdk.serialize(value);
+        int header = format == CacheFormat.SMILE ? SMILE : JDK;
+
+        if (compression != CacheCompression.NONE && payload.length >= compressionThreshold) {
+            byte[] compressed = compression == CacheCompression.LZ4 ? compressLz4(payload) : compressDeflate(payload);
+            if (compressed.length < payload.length) {
+                return ByteBuffer.allocate(5 + compressed.length)
+                        .put((byte) (header | (compression == CacheCompression.LZ4 ? LZ4 : DEFLATE)))
+                        .putInt(payload.length)
+                        .put(compressed)
+                        .array();
+            }
+        }
+        return ByteBuffer.allocate(1 + payload.length).put((byte) (header | UNCOMPRESSED)).put(payload).array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == JDK_STREAM) {
+            return jdk.deserialize(bytes);
+        }
+
+        int header = bytes[0] & 0xFF;
+        byte[] payload = switch (header & 0x0F) {
+            case UNCOMPRESSED -> Arrays.copyOfRange(bytes, 1, bytes.length);
+            case LZ4 -> decompressLz4(bytes);
+            case DEFLATE -> decompressDeflate(bytes);
+            default -> throw new SerializationException("Unknown cache value compression: " + header);
+        };
+        return switch (header & 0xF0) {
+            case SMILE -> readSmile(payload);
+            case JDK -> jdk.deserialize(payload);
+            default -> throw new SerializationException("Unknown cache value format: " + header);
+        };
+    }
+
+    private byte[] writeSmile(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(typeOf(value).toCanonical());
+            SMILE_MAPPER.writeValue((OutputStream) out, value);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Could not write " + value.getClass().getName() + " as Smile", e);
+        }
+    }
+
+    private Object readSmile(byte[] payload) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            JavaType type = TYPES.computeIfAbsent(in.readUTF(), SMILE_MAPPER.getTypeFactory()::constructFromCanonical);
+            return SMILE_MAPPER.readValue((InputStream) in, type);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SerializationException("Could not read Smile cache value", e);
+        }
+    }
+
+    private static JavaType typeOf(Object value) {
+        TypeFactory types = SMILE_MAPPER.getTypeFactory();
+        if (value instanceof List<?> list) {
+            return types.constructCollectionType(List.class, classOf(list));
+        }
+        if (value instanceof Set<?> set) {
+            return types.constructCollectionType(Set.class, classOf(set));
+        }
+        if (value instanceof Map<?, ?> map) {
+            return types.constructMapType(Map.class, classOf(map.keySet()), classOf(map.values()));
+        }
+        return types.constructType(value.getClass());
+    }
+
+    private static Class<?> classOf(Collection<?> values) {
+        for (Object value : values) {
+            if (value != null) {
+                return value.getClass();
+            }
+        }
+        return Object.class;
+    }
+
+    private static byte[] compressLz4(byte[] payload) {
+        LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+        byte[] compressed = new byte[compressor.maxCompressedLength(payload.length)];
+        int length = compressor.compress(payload, 0, payload.length, compressed, 0, compressed.length);
+        return Arrays.copyOf(compressed, length);
+    }
+
+    private static byte[] decompressLz4(byte[] bytes) {
+        byte[] payload = new byte[ByteBuffer.wrap(bytes, 1, 4).getInt()];
+        LZ4_FACTORY.fastDecompressor().decompress(bytes, 5, payload, 0, payload.length);
+        return payload;
+    }
+
+    private static byte[] compressDeflate(byte[] payload) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompressDeflate(byte[] bytes) {
+        byte[] payload = new byte[ByteBuffer.wrap(bytes, 1, 4).getInt()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 5, bytes.length - 5);
+            int length = inflater.inflate(payload);
+            if (length != payload.length || !inflater.finished()) {
+                throw new SerializationException("Truncated cache value");
+            }
+            return payload;
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupt cache value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ms.commons.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Time to live spread by a random fraction around its base, so that entries written together, after a restart or a
+ * clear, do not all expire in the same instant. A zero base keeps entries until they are evicted.
+ */
+public class JitteredTtl implements RedisCacheWriter.TtlFunction {
+
+    private final Duration ttl;
+    private final double jitter;
+    private final DistributionSummary ttls;
+
+    public JitteredTtl(Duration ttl, double jitter, DistributionSummary ttls) {
+        this.ttl = ttl;
+        this.jitter = jitter;
+        this.ttls = ttls;
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, @Nullable Object value) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            return Duration.ZERO;
+        }
+        long spread = (long) (ttl.toMillis() * jitter);
+        Duration entryTtl = spread > 0 ? ttl.plusMillis(ThreadLocalRandom.current().nextLong(-spread, spread + 1)) : ttl;
+        ttls.record(entryTtl.toMillis() / 1000.0);
+        return entryTtl;
+    }
+}
@@ -0,0 +1,64 @@
+package com.ms.commons.cache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Redis cache manager giving every cache its own value codec, jittered time to live and refresh-ahead window,
+ * whether it is created on first use or not.
+ */
+public class PolicyRedisCacheManager extends RedisCacheManager {
+
+    private final RedisCacheWriter cacheWriter;
+    private final RedisCacheConfiguration cacheDefaults;
+    private final RedisConnectionFactory connectionFactory;
+    private final CacheCodecProperties codecProperties;
+    private final CachePolicyProperties policyProperties;
+    private final MeterRegistry meterRegistry;
+    private final Executor refreshExecutor;
+
+    public PolicyRedisCacheManager(RedisConnectionFactory connectionFactory, RedisCacheConfiguration cacheDefaults, CacheCodecProperties codecProperties,
+                                   CachePolicyProperties policyProperties, MeterRegistry meterRegistry, Executor refreshExecutor) {
+        this(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory).withStatisticsCollector(CacheStatisticsCollector.create()), connectionFactory, cacheDefaults, codecProperties, policyProperties, meterRegistry, refreshExecutor);
+    }
+
+    private PolicyRedisCacheManager(RedisCacheWriter cacheWriter, RedisConnectionFactory connectionFactory, RedisCacheConfiguration cacheDefaults, CacheCodecProperties codecProperties,
+                                    CachePolicyProperties policyProperties, MeterRegistry meterRegistry, Executor refreshExecutor) {
+        super(cacheWriter, cacheDefaults);
+        this.cacheWriter = cacheWriter;
+        this.cacheDefaults = cacheDefaults;
+        this.connectionFactory = connectionFactory;
+        this.codecProperties = codecProperties;
+        this.policyProperties = policyProperties;
+        this.meterRegistry = meterRegistry;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    protected RedisCache createRedisCache(String name, @Nullable RedisCacheConfiguration cacheConfiguration) {
+        CachePolicyProperties.Policy policy = policyProperties.policy(name);
+        DistributionSummary ttls = DistributionSummary.builder("cache.ttl")
+                .description("Time to live given to the entries written to the cache")
+                .baseUnit("seconds")
+                .tag("cache", name)
+                .register(meterRegistry);
+        RedisCacheConfiguration configuration = (cacheConfiguration != null ? cacheConfiguration : cacheDefaults)
+                .serializeValuesWith(SerializationPair.fromSerializer(codecProperties.serializer(name, getClass().getClassLoader())))
+                .entryTtl(new JitteredTtl(policy.getTtl(), policy.getJitter(), ttls));
+
+        if (policy.getRefreshAhead() == null || policy.getTtl().isZero()) {
+            return super.createRedisCache(name, configuration);
+        }
+        return new RefreshAheadRedisCache(name, cacheWriter, configuration, connectionFactory, policy.getRefreshAhead(), refreshExecutor, meterRegistry);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ms.commons.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Redis cache reloading an entry in the background when it is read within the refresh window before its expiry,
+ * so that hot keys are replaced before any reader has to wait for them. Only reads that come with a loader, those
+ * of sync cacheable methods, can trigger a refresh. The remaining time to live of a key is read from Redis on its
+ * first hit and then tracked locally until the key is written again.
+ */
+@Slf4j
+public class RefreshAheadRedisCache extends RedisCache {
+
+    private static final int MAX_TRACKED_KEYS = 10_000;
+
+    private final RedisConnectionFactory connectionFactory;
+    private final long window;
+    private final Executor refreshExecutor;
+    private final Counter refreshed;
+    private final Counter failed;
+    private final Map<Object, Long> expiries = new ConcurrentHashMap<>();
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    public RefreshAheadRedisCache(String name, RedisCacheWriter cacheWriter, RedisCacheConfiguration cacheConfiguration,
+                                  RedisConnectionFactory connectionFactory, Duration window, Executor refreshExecutor, MeterRegistry meterRegistry) {
+        super(name, cacheWriter, cacheConfiguration);
+        this.connectionFactory = connectionFactory;
+        this.window = window.toMillis();
+        this.refreshExecutor = refreshExecutor;
+        this.refreshed = Counter.builder("cache.refresh.ahead").tag("cache", name).tag("result", "success").register(meterRegistry);
+        this.failed = Counter.builder("cache.refresh.ahead").tag("cache", name).tag("result", "failure").register(meterRegistry);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        boolean[] loaded = {false};
+        T value = super.get(key, () -> {
+            loaded[0] = true;
+            return valueLoader.call();
+        });
+        if (!loaded[0]) {
+            refreshIfExpiring(key, valueLoader);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        super.put(key, value);
+        expiries.remove(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = super.putIfAbsent(key, value);
+        expiries.remove(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        super.evict(key);
+        expiries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        expiries.clear();
+    }
+
+    /**
+     * Reloads the entry of a key that was just read from Redis if it expires within the refresh window.
+     */
+    public void refreshIfExpiring(Object key, Callable<?> valueLoader) {
+        long now = System.currentTimeMillis();
+        Long expiresAt = expiries.get(key);
+        if (expiresAt == null || expiresAt <= now) {
+            expiresAt = readExpiry(key, now);
+            if (expiries.size() >= MAX_TRACKED_KEYS) {
+                expiries.clear();
+            }
+            expiries.put(key, expiresAt);
+        }
+        if (expiresAt - now > window || !refreshing.add(key)) {
+            return;
+        }
+
+        refreshExecutor.execute(() -> {
+            try {
+                put(key, valueLoader.call());
+                refreshed.increment();
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("refresh ahead of {}::{} failed", getName(), key, e);
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private long readExpiry(Object key, long now) {
+        RedisCacheConfiguration configuration = getCacheConfiguration();
+        ByteBuffer redisKey = configuration.getKeySerializationPair().write(configuration.getKeyPrefixFor(getName()) + key);
+        byte[] bytes = new byte[redisKey.remaining()];
+        redisKey.get(bytes);
+
+        Long ttl;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            ttl = connection.keyCommands().pTtl(bytes);
+        }
+        // -1 for a key kept until evicted, -2 for a key that expired since it was read
+        if (ttl == null || ttl == -1) {
+            return Long.MAX_VALUE;
+        }
+        return ttl < 0 ? now : now + ttl;
+    }
+}
@@ -0,0 +1,69 @@
+package com.ms.commons.thread;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Watches for virtual threads that block while pinned to their carrier, typically inside a {@code synchronized}
+ * block or a driver lock, by streaming the JVM's own jdk.VirtualThreadPinned events. The first pin longer than the
+ * threshold from each call site is logged with its stack, later ones at debug level. Given a meter registry, every
+ * such pin is also counted in 'jvm.threads.virtual.pinned'.
+ */
+@Slf4j
+public class PinnedThreadMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Duration threshold;
+    private final int stackDepth;
+    @Nullable
+    private final Counter pinned;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public PinnedThreadMonitor(Duration threshold, int stackDepth, @Nullable MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.stackDepth = stackDepth;
+        this.pinned = meterRegistry != null ? Counter.builder("jvm.threads.virtual.pinned").register(meterRegistry) : null;
+    }
+
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::pinned);
+        stream.startAsync();
+    }
+
+    public void stop() {
+        stream.close();
+    }
+
+    private void pinned(RecordedEvent event) {
+        if (pinned != null) {
+            pinned.increment();
+        }
+        if (event.getStackTrace() == null) {
+            return;
+        }
+        String stack = event.getStackTrace().getFrames().stream()
+                .filter(RecordedFrame::isJavaFrame)
+                .limit(stackDepth)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n\tat "));
+        if (reportedSites.add(stack)) {
+            log.warn("virtual thread pinned to its carrier for {} ms\n\tat {}", event.getDuration().toMillis(), stack);
+        } else {
+            log.debug("virtual thread pinned to its carrier for {} ms", event.getDuration().toMillis());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.ms.commons.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a number of requests while keeping up to the given concurrency in flight, then logs the throughput, the 99th
+ * percentile latency and the failed requests. Shared by the services' opt-in benchmark tests, which pass the endpoint
+ * to load, or several endpoints taken in turn.
+ */
+@Slf4j
+public class ConcurrentRequestBenchmark {
+
+    private final int concurrency;
+    private final int requests;
+
+    public ConcurrentRequestBenchmark(int concurrency, int requests) {
+        this.concurrency = concurrency;
+        this.requests = requests;
+    }
+
+    public Result run(String label, HttpRequest request) throws InterruptedException {
+        return run(label, List.of(request));
+    }
+
+    public Result run(String label, List<HttpRequest> endpoints) throws InterruptedException {
+        try (HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+            long[] latencies = new long[requests];
+            AtomicInteger failed = new AtomicInteger();
+            Semaphore inFlight = new Semaphore(concurrency);
+            CountDownLatch done = new CountDownLatch(requests);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                int index = i;
+                inFlight.acquire();
+                long sent = System.nanoTime();
+                client.sendAsync(endpoints.get(i % endpoints.size()), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            if (error != null || response.statusCode() >= 400) {
+                                failed.incrementAndGet();
+                            }
+                            latencies[index] = System.nanoTime() - sent;
+                            inFlight.release();
+                            done.countDown();
+                        });
+            }
+            done.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            Result result = new Result(requests / seconds, latencies[(int) (requests * 0.99)] / 1e6, failed.get());
+            String target = endpoints.size() == 1 ? endpoints.getFirst().method() + " " + endpoints.getFirst().uri() : endpoints.size() + " endpoints";
+            log.info("{} {} concurrency={} requests/s={} p99={}ms failed={}", label, target, concurrency,
+                    Math.round(result.requestsPerSecond()), String.format("%.1f", result.p99Millis()), result.failed());
+            return result;
+        }
+    }
+
+    public record Result(double requestsPerSecond, double p99Millis, int failed) {
+    }
+}
@@ -2,6 +2,7 @@ package com.ms.user_service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ms.commons.benchmark.ConcurrentRequestBenchmark;
 import com.ms.user_service.dto.LoginResponseDTO;
 import com.ms.user_service.dto.UserNotificationDTO;
 import com.ms.user_service.model.Role;
@@ -15,7 +16,9 @@ import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.*;
 
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -32,6 +35,8 @@ import org.testcontainers.kafka.ConfluentKafkaContainer;
 import org.testcontainers.shaded.com.google.common.base.Supplier;
 import org.testcontainers.utility.DockerImageName;
 
+import java.net.URI;
+import java.net.http.HttpRequest;
 import java.time.Duration;
 import java.util.List;
 import java.util.Properties;
@@ -90,6 +95,9 @@ class UserServiceApplicationTests {
 
 	String baseUrl;
 
+	@Value("${spring.threads.virtual.enabled:false}")
+	boolean virtualThreads;
+
 	static String notifyUserTopic = "notify-user";
 	static String userDeletedTopic = "user-deleted";
 
@@ -338,6 +346,18 @@ class UserServiceApplicationTests {
 				});
 	}
 
+	// run with -Dbenchmark=true, and again with -Dspring.threads.virtual.enabled=false for the platform-thread baseline
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+	void benchmarkConcurrentRequests() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/auth/login"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"email\": \"admin\", \"password\": \"admin\"}"))
+				.build();
+
+		new ConcurrentRequestBenchmark(10_000, 10_000).run("virtualThreads=" + virtualThreads, request);
+	}
+
 	private <T> String parseObjectToJson(T object) {
 		try {
 			return objectMapper.writeValueAsString(object);